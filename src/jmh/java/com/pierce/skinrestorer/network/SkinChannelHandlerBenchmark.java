@@ -0,0 +1,91 @@
+package com.pierce.skinrestorer.network;
+
+import com.mojang.authlib.GameProfile;
+import com.pierce.skinrestorer.skin.BenchmarkData;
+import com.pierce.skinrestorer.skin.BenchmarkHooks;
+import com.pierce.skinrestorer.skin.SkinSnapshot;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.network.Packet;
+import net.minecraft.network.play.server.S00PacketKeepAlive;
+import net.minecraft.network.play.server.S03PacketTimeUpdate;
+import net.minecraft.network.play.server.S0CPacketSpawnPlayer;
+import net.minecraft.network.play.server.S12PacketEntityVelocity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SkinChannelHandler.write on an EmbeddedChannel with a realistic packet mix:
+ * mostly packets it passes straight through, with a share of spawn packets to rewrite.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkinChannelHandlerBenchmark {
+
+    // One spawn packet in every N writes
+    @Param({"4", "16", "64"})
+    public int spawnEvery;
+
+    private EmbeddedChannel channel;
+    private Packet[] packets;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SkinPacketHandler.init();
+        channel = new EmbeddedChannel(new SkinPacketHandler.SkinChannelHandler(null));
+
+        Field profileField = null;
+        for (Field field : S0CPacketSpawnPlayer.class.getDeclaredFields()) {
+            if (field.getType() == GameProfile.class) {
+                field.setAccessible(true);
+                profileField = field;
+            }
+        }
+
+        SkinSnapshot snapshot = new SkinSnapshot(BenchmarkData.TEXTURE_VALUE, BenchmarkData.TEXTURE_SIGNATURE);
+        packets = new Packet[256];
+        for (int i = 0; i < packets.length; i++) {
+            if (i % spawnEvery == 0) {
+                // Half the spawned players have a custom skin
+                GameProfile profile = new GameProfile(UUID.randomUUID(), "Player" + i);
+                if (i % (spawnEvery * 2) == 0) {
+                    BenchmarkHooks.seedProfile(profile.getId().toString(), snapshot.createProfile(profile));
+                }
+                S0CPacketSpawnPlayer spawn = new S0CPacketSpawnPlayer();
+                profileField.set(spawn, profile);
+                packets[i] = spawn;
+            } else if (i % 3 == 0) {
+                packets[i] = new S00PacketKeepAlive(i);
+            } else if (i % 3 == 1) {
+                packets[i] = new S03PacketTimeUpdate(i, i, true);
+            } else {
+                packets[i] = new S12PacketEntityVelocity(i, 0.1, 0.2, 0.3);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object write() {
+        next = (next + 1) & (packets.length - 1);
+        channel.writeOutbound(packets[next]);
+        return channel.readOutbound();
+    }
+}
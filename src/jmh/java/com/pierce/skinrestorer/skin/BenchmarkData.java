@@ -0,0 +1,40 @@
+package com.pierce.skinrestorer.skin;
+
+/**
+ * Realistic Mojang payloads shared by the benchmarks.
+ */
+public final class BenchmarkData {
+
+    // Decodes to a textures object with a SKIN url, like the session server returns
+    public static final String TEXTURE_VALUE =
+        "ewogICJ0aW1lc3RhbXAiIDogMTcwNTc2NjQwMDAwMCwKICAicHJvZmlsZUlkIiA6ICIwNjlhNzlmNDQ0ZTk0NzI2YTVi"
+        + "ZWZjYTkwZTM4YWFmNSIsCiAgInByb2ZpbGVOYW1lIiA6ICJOb3RjaCIsCiAgInRleHR1cmVzIiA6IHsKICAgICJTS0lO"
+        + "IiA6IHsKICAgICAgInVybCIgOiAiaHR0cDovL3RleHR1cmVzLm1pbmVjcmFmdC5uZXQvdGV4dHVyZS8yOTJkYzg1OGVm"
+        + "OGY0YjM5NmUzOTBkY2RkMjZmMDk4MmY3ZWNmMTVkNzg3ZDYxMWZhNDM1MGQ4NDBhOWMyYjNiIgogICAgfQogIH0KfQ==";
+
+    // Same length as a real 4096-bit RSA signature in base64
+    public static final String TEXTURE_SIGNATURE = repeat("A", 684);
+
+    public static final String UUID_RESPONSE =
+        "{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\"}";
+
+    public static final String BULK_UUID_RESPONSE =
+        "[{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\"},"
+        + "{\"id\":\"853c80ef3c3749fdaa49938b674adae6\",\"name\":\"jeb_\"},"
+        + "{\"id\":\"61699b2ed3274a019f1e0ea8c3f06bc6\",\"name\":\"Dinnerbone\"}]";
+
+    public static final String PROFILE_RESPONSE =
+        "{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\",\"properties\":[{"
+        + "\"name\":\"textures\",\"value\":\"" + TEXTURE_VALUE + "\",\"signature\":\"" + TEXTURE_SIGNATURE + "\"}]}";
+
+    private BenchmarkData() {
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
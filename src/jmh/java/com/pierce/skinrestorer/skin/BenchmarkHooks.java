@@ -0,0 +1,20 @@
+package com.pierce.skinrestorer.skin;
+
+import com.mojang.authlib.GameProfile;
+
+/**
+ * Entry points into package-private SkinManager state, so benchmarks can set up without a server.
+ * Lives only in the jmh source set and is not part of the mod.
+ */
+public final class BenchmarkHooks {
+
+    private BenchmarkHooks() {
+    }
+
+    /**
+     * Put a modified profile straight into the spawn-packet cache.
+     */
+    public static void seedProfile(String playerUUID, GameProfile profile) {
+        SkinManager.seedProfile(playerUUID, profile);
+    }
+}
@@ -0,0 +1,41 @@
+package com.pierce.skinrestorer.skin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of Mojang API responses, without the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkinFetcherBenchmark {
+
+    @Benchmark
+    public String parseUUIDResponse() {
+        return SkinFetcher.parseUUIDResponse(BenchmarkData.UUID_RESPONSE);
+    }
+
+    @Benchmark
+    public Map<String, String> parseBulkUUIDResponse() {
+        return SkinFetcher.parseBulkUUIDResponse(BenchmarkData.BULK_UUID_RESPONSE);
+    }
+
+    @Benchmark
+    public SkinFetcher.SkinData parseProfileResponse() {
+        return SkinFetcher.parseProfileResponse("069a79f444e94726a5befca90e38aaf5", BenchmarkData.PROFILE_RESPONSE);
+    }
+}
@@ -0,0 +1,59 @@
+package com.pierce.skinrestorer.skin;
+
+import com.mojang.authlib.GameProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SkinManager.getModifiedProfile, called for every outgoing spawn packet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkinManagerBenchmark {
+
+    private static final int PLAYERS = 200;
+
+    private GameProfile[] skinned;
+    private GameProfile[] plain;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SkinSnapshot snapshot = new SkinSnapshot(BenchmarkData.TEXTURE_VALUE, BenchmarkData.TEXTURE_SIGNATURE);
+        skinned = new GameProfile[PLAYERS];
+        plain = new GameProfile[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            skinned[i] = new GameProfile(UUID.randomUUID(), "Skinned" + i);
+            plain[i] = new GameProfile(UUID.randomUUID(), "Plain" + i);
+            BenchmarkHooks.seedProfile(skinned[i].getId().toString(), snapshot.createProfile(skinned[i]));
+        }
+    }
+
+    @Benchmark
+    public GameProfile getModifiedProfileHit() {
+        next = (next + 1) % PLAYERS;
+        return SkinManager.getModifiedProfile(skinned[next]);
+    }
+
+    @Benchmark
+    public GameProfile getModifiedProfileMiss() {
+        next = (next + 1) % PLAYERS;
+        return SkinManager.getModifiedProfile(plain[next]);
+    }
+}
@@ -0,0 +1,70 @@
+package com.pierce.skinrestorer.skin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full load and save of skins.json at different history sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SkinStorageBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int entries;
+
+    private File dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = File.createTempFile("skinbench", "");
+        dir.delete();
+        SkinStorage.init(dir);
+
+        for (int i = 0; i < entries; i++) {
+            SkinStorage.putSkin(UUID.randomUUID().toString(),
+                new SkinStorage.SkinData("Player" + i, "Source" + (i % 500), SkinStorage.SkinType.MOJANG_USERNAME));
+        }
+        SkinStorage.save();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public void load() {
+        SkinStorage.load();
+    }
+
+    @Benchmark
+    public void save() {
+        SkinStorage.save();
+    }
+}
@@ -0,0 +1,702 @@
+package com.pierce.skinrestorer.loadtest;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.properties.Property;
+import com.pierce.skinrestorer.command.CommandThrottle;
+import com.pierce.skinrestorer.config.ModConfig;
+import com.pierce.skinrestorer.metrics.LatencyHistogram;
+import com.pierce.skinrestorer.network.SkinPacketHandler;
+import com.pierce.skinrestorer.skin.HarnessHooks;
+import com.pierce.skinrestorer.skin.PendingSkinChanges;
+import com.pierce.skinrestorer.skin.PlayerSession;
+import com.pierce.skinrestorer.skin.PlayerSessions;
+import com.pierce.skinrestorer.skin.SkinFetchPipeline;
+import com.pierce.skinrestorer.skin.SkinFetcher;
+import com.pierce.skinrestorer.skin.SkinJobScheduler;
+import com.pierce.skinrestorer.skin.SkinManager;
+import com.pierce.skinrestorer.skin.SkinStorage;
+import com.pierce.skinrestorer.skin.TextureInfo;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.minecraft.network.play.server.S0CPacketSpawnPlayer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hammers the skin pipeline with concurrent set, clear, reload, join, leave and spawn operations,
+ * then checks that nothing was lost, torn or leaked.
+ *
+ * Players have no entity: they join through HarnessHooks.joinDetached with an EmbeddedChannel, so the
+ * real session registry, channel handler, scheduler, fetch pipeline and storage are exercised. Commands
+ * go through a CommandThrottle the same way /skin does. One thread plays the server thread and applies
+ * queued profile changes every few milliseconds, and another saves skins.json in a loop.
+ *
+ * Checked while running:
+ *   - every spawn packet carries either the untouched profile or one complete, correctly signed
+ *     texture for the right player (no torn profiles)
+ * Checked once everything has settled:
+ *   - each online player's spawn profile shows exactly the skin in storage (no lost updates)
+ *   - skins.json on disk matches memory
+ *   - after everyone leaves: no sessions, channel handlers, in-flight commands, pending changes,
+ *     queued jobs or cached skins of players without a stored skin are left behind
+ *
+ * The stored-vs-shown check assumes every fetch of an existing name succeeds, so it is only strict
+ * when --errors and --ratelimit are 0 (the default).
+ *
+ * Options (all optional, "--name value"):
+ *   --players 50      simulated players (fewer means more operations racing on each)
+ *   --ops 20000       operations to run
+ *   --threads 16      threads issuing operations
+ *   --rate 1000       operations per second across all threads, 0 for as fast as possible
+ *   --skins 40        distinct skin names
+ *   --unknown 0.05    fraction of skin names that do not exist
+ *   --latency 20      stand-in response time in ms
+ *   --jitter 40       extra random response time in ms
+ *   --errors 0        fraction of responses that are 500s
+ *   --ratelimit 0     fraction of responses that are 429s
+ *   --tick 5          milliseconds between simulated server ticks
+ *   --timeout 120     seconds to wait for the pipeline to settle
+ */
+public class ConcurrencyStressHarness {
+
+    enum Op {
+        JOIN(10),
+        LEAVE(8),
+        SET(25),
+        CLEAR(8),
+        RELOAD(12),
+        SPAWN(37);
+
+        final int weight;
+
+        Op(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final Gson GSON = new Gson();
+
+    private static Field spawnProfileField;
+
+    private static final CommandThrottle throttle = new CommandThrottle();
+
+    private static final Map<Op, AtomicLong> opCounts = new EnumMap<Op, AtomicLong>(Op.class);
+    private static final Map<CommandThrottle.Result, AtomicLong> throttleResults =
+        new EnumMap<CommandThrottle.Result, AtomicLong>(CommandThrottle.Result.class);
+    private static final LatencyHistogram commandLatency = new LatencyHistogram();
+    private static final LatencyHistogram spawnLatency = new LatencyHistogram();
+    private static final AtomicLong spawnsWithSkin = new AtomicLong();
+    private static final AtomicLong spawnsWithoutSkin = new AtomicLong();
+
+    private static final List<String> violations = Collections.synchronizedList(new ArrayList<String>());
+    private static final AtomicInteger violationCount = new AtomicInteger();
+
+    static {
+        for (Op op : Op.values()) {
+            opCounts.put(op, new AtomicLong());
+        }
+        for (CommandThrottle.Result result : CommandThrottle.Result.values()) {
+            throttleResults.put(result, new AtomicLong());
+        }
+    }
+
+    /**
+     * One simulated player. The channel is non-null while they are online.
+     */
+    private static final class SimPlayer {
+        final UUID id;
+        final String uuid;
+        final String name;
+        final GameProfile profile; // What the server would put into spawn packets for them
+        EmbeddedChannel channel;   // Guarded by this; writes to it are serialised like an event loop
+
+        SimPlayer(String name) {
+            this.name = name;
+            this.id = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes());
+            this.uuid = id.toString();
+            this.profile = new GameProfile(id, name);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int playerCount = intOption(options, "players", 50);
+        final int ops = intOption(options, "ops", 20000);
+        int threads = intOption(options, "threads", 16);
+        int rate = intOption(options, "rate", 1000);
+        int skins = Math.max(1, intOption(options, "skins", 40));
+        double unknown = doubleOption(options, "unknown", 0.05);
+        final int tickMillis = intOption(options, "tick", 5);
+        int timeoutSeconds = intOption(options, "timeout", 120);
+
+        MojangStandInServer.Settings settings = new MojangStandInServer.Settings();
+        settings.latencyMillis = intOption(options, "latency", 20);
+        settings.jitterMillis = intOption(options, "jitter", 40);
+        settings.errorRate = doubleOption(options, "errors", 0);
+        settings.rateLimitRate = doubleOption(options, "ratelimit", 0);
+        boolean strict = settings.errorRate == 0 && settings.rateLimitRate == 0;
+
+        // No cooldown or cap, so every command reaches the pipeline
+        ModConfig.commandCooldownSeconds = 0;
+        ModConfig.maxConcurrentCommands = playerCount;
+
+        File dataDir = Files.createTempDirectory("skinrestorer-stress").toFile();
+        SkinStorage.init(dataDir);
+        SkinStorage.awaitLoaded();
+        PendingSkinChanges.init(dataDir);
+
+        MojangStandInServer server = new MojangStandInServer(settings);
+        server.start();
+        SkinFetcher.setBaseUrls(Collections.singletonList(server.getBaseUrl()), Collections.singletonList(server.getBaseUrl()));
+        SkinPacketHandler.init();
+        SkinManager.start();
+
+        spawnProfileField = findProfileField();
+
+        final String[] skinNames = new String[skins];
+        int unknownEvery = unknown > 0 ? (int) Math.max(1, Math.round(1 / unknown)) : 0;
+        for (int i = 0; i < skins; i++) {
+            boolean missing = unknownEvery > 0 && i % unknownEvery == unknownEvery - 1;
+            skinNames[i] = (missing ? "unknown" : "skin") + i;
+        }
+        final SimPlayer[] players = new SimPlayer[playerCount];
+        for (int i = 0; i < playerCount; i++) {
+            players[i] = new SimPlayer("player" + i);
+        }
+
+        // The server thread: the only caller of processPendingUpdates
+        final Background ticker = new Background("Stress-ServerThread") {
+            @Override
+            void step() throws InterruptedException {
+                SkinManager.processPendingUpdates();
+                Thread.sleep(tickMillis);
+            }
+        };
+        final Background saver = new Background("Stress-Saver") {
+            @Override
+            void step() throws InterruptedException {
+                SkinStorage.save();
+                Thread.sleep(25);
+            }
+        };
+        ticker.start();
+        saver.start();
+
+        // The storm
+        final AtomicInteger issued = new AtomicInteger();
+        List<Thread> drivers = new ArrayList<Thread>();
+        final long stormStart = System.nanoTime();
+        // Spread the operations out so fetches finish during the storm and race the later operations
+        final long nanosPerOp = rate > 0 ? 1000000000L / rate : 0;
+        for (int t = 0; t < threads; t++) {
+            Thread driver = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int index;
+                    while ((index = issued.getAndIncrement()) < ops) {
+                        long wait = stormStart + index * nanosPerOp - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        SimPlayer player = players[random.nextInt(players.length)];
+                        try {
+                            runOp(pickOp(random), player, players[random.nextInt(players.length)],
+                                skinNames[random.nextInt(skinNames.length)]);
+                        } catch (Exception e) {
+                            violation("Operation threw " + e);
+                        }
+                    }
+                }
+            }, "Stress-Driver-" + t);
+            drivers.add(driver);
+            driver.start();
+        }
+        for (Thread driver : drivers) {
+            driver.join();
+        }
+        long stormMillis = (System.nanoTime() - stormStart) / 1000000L;
+
+        boolean settled = settle(timeoutSeconds * 1000L);
+        ticker.stop();
+        saver.stop();
+        // This thread is the server thread from here on
+        SkinManager.processPendingUpdates();
+
+        if (!settled) {
+            violation("Pipeline did not settle within " + timeoutSeconds + "s");
+        }
+        int unresolved = checkConsistency(players, strict);
+        checkPersistence(players);
+        leaveAll(players);
+        checkLeaks(players);
+
+        System.out.println("=== Concurrency stress ===");
+        System.out.println("Players: " + playerCount + ", operations: " + ops + " at " + (rate > 0 ? rate + "/s" : "full speed")
+            + ", driver threads: " + threads
+            + ", distinct skins: " + skins + ", stand-in latency: " + settings.latencyMillis + "+" + settings.jitterMillis + "ms");
+        System.out.println(String.format("Storm: %dms, %.0f ops/s", stormMillis, ops * 1000.0 / Math.max(1, stormMillis)));
+        StringBuilder counts = new StringBuilder("Operations:");
+        for (Op op : Op.values()) {
+            counts.append(' ').append(op.name().toLowerCase()).append('=').append(opCounts.get(op).get());
+        }
+        System.out.println(counts);
+        StringBuilder results = new StringBuilder("Commands:");
+        for (CommandThrottle.Result result : CommandThrottle.Result.values()) {
+            results.append(' ').append(result.name().toLowerCase()).append('=').append(throttleResults.get(result).get());
+        }
+        System.out.println(results);
+        printLatency("Command run", commandLatency);
+        printLatency("Spawn packet write", spawnLatency);
+        System.out.println("Spawn packets: " + spawnsWithSkin.get() + " with a custom skin, " + spawnsWithoutSkin.get() + " without");
+        System.out.println("Stand-in: " + server.getRequests() + " requests, " + server.getRateLimited() + " 429s, "
+            + server.getErrors() + " 500s, " + server.getNotFound() + " unknown names");
+        if (!strict) {
+            System.out.println("Stored skin not shown (expected with injected errors): " + unresolved);
+        }
+
+        if (violations.isEmpty()) {
+            System.out.println("All invariants held");
+        } else {
+            System.out.println(violationCount.get() + " invariant violations, first " + violations.size() + ":");
+            for (String violation : violations) {
+                System.out.println("  " + violation);
+            }
+        }
+
+        SkinManager.shutdown();
+        server.stop();
+        for (File file : dataDir.listFiles()) {
+            file.delete();
+        }
+        dataDir.delete();
+        System.exit(violations.isEmpty() ? 0 : 1);
+    }
+
+    private static Op pickOp(ThreadLocalRandom random) {
+        int total = 0;
+        for (Op op : Op.values()) {
+            total += op.weight;
+        }
+        int roll = random.nextInt(total);
+        for (Op op : Op.values()) {
+            roll -= op.weight;
+            if (roll < 0) {
+                return op;
+            }
+        }
+        return Op.SPAWN;
+    }
+
+    private static void runOp(Op op, SimPlayer player, SimPlayer other, String skinName) {
+        switch (op) {
+            case JOIN:
+                if (!join(player)) {
+                    return;
+                }
+                break;
+            case LEAVE:
+                if (!leave(player)) {
+                    return;
+                }
+                break;
+            case SET:
+                command(player, CommandThrottle.Kind.SET, skinName);
+                break;
+            case CLEAR:
+                // /skin clear runs on the calling thread without the throttle
+                SkinManager.clearSkin(player.uuid, player.name);
+                break;
+            case RELOAD:
+                command(player, CommandThrottle.Kind.RELOAD, null);
+                break;
+            case SPAWN:
+                // player sees other appear
+                if (!spawn(player, other)) {
+                    return;
+                }
+                break;
+        }
+        opCounts.get(op).incrementAndGet();
+    }
+
+    private static boolean join(SimPlayer player) {
+        synchronized (player) {
+            if (player.channel != null) {
+                return false;
+            }
+            // Netty 4.0.10 (the version Minecraft 1.7.10 ships) rejects an empty handler list
+            EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+            channel.pipeline().addLast("packet_handler", new ChannelDuplexHandler());
+            HarnessHooks.joinDetached(player.id, player.name, channel);
+            player.channel = channel;
+            return true;
+        }
+    }
+
+    private static boolean leave(SimPlayer player) {
+        synchronized (player) {
+            if (player.channel == null) {
+                return false;
+            }
+            HarnessHooks.leaveDetached(player.id);
+            if (player.channel.pipeline().get("pierceskin_handler") != null) {
+                violation("Handler left in " + player.name + "'s channel after leaving");
+            }
+            player.channel.finish();
+            player.channel = null;
+            return true;
+        }
+    }
+
+    /**
+     * Issue /skin set or /skin reload the way SkinCommand does: one worker per player,
+     * which picks up superseding requests until the player has none left.
+     */
+    private static void command(final SimPlayer player, CommandThrottle.Kind kind, String target) {
+        CommandThrottle.Result result = throttle.tryAcquire(player.uuid, player.name, kind, target);
+        throttleResults.get(result).incrementAndGet();
+        if (result != CommandThrottle.Result.STARTED) {
+            return;
+        }
+
+        boolean submitted = SkinManager.submit(SkinJobScheduler.JobClass.COMMAND, "stress " + player.name, new Runnable() {
+            @Override
+            public void run() {
+                CommandThrottle.Request request;
+                while ((request = throttle.current(player.uuid)) != null) {
+                    long start = System.nanoTime();
+                    try {
+                        if (request.kind == CommandThrottle.Kind.SET) {
+                            SkinManager.setSkinByUsername(player.uuid, player.name, request.target);
+                        } else {
+                            SkinManager.reloadSkin(player.uuid);
+                        }
+                    } catch (Exception e) {
+                        violation("Command for " + player.name + " threw " + e);
+                    }
+                    commandLatency.recordSince(start);
+                    if (throttle.complete(player.uuid, request)) {
+                        return;
+                    }
+                }
+            }
+        });
+        if (!submitted) {
+            throttle.abandon(player.uuid);
+            violation("Scheduler rejected a command job");
+        }
+    }
+
+    /**
+     * Send viewer a spawn packet for target through viewer's channel and check what comes out.
+     */
+    private static boolean spawn(SimPlayer viewer, SimPlayer target) {
+        synchronized (viewer) {
+            if (viewer.channel == null) {
+                return false;
+            }
+            GameProfile sent = writeSpawn(viewer.channel, target);
+            if (checkProfile(target, sent) != null) {
+                spawnsWithSkin.incrementAndGet();
+            } else {
+                spawnsWithoutSkin.incrementAndGet();
+            }
+            return true;
+        }
+    }
+
+    private static GameProfile writeSpawn(EmbeddedChannel channel, SimPlayer target) {
+        try {
+            S0CPacketSpawnPlayer packet = new S0CPacketSpawnPlayer();
+            spawnProfileField.set(packet, target.profile);
+            long start = System.nanoTime();
+            channel.writeOutbound(packet);
+            Object written = channel.readOutbound();
+            spawnLatency.recordSince(start);
+            if (written != packet) {
+                violation("Spawn packet for " + target.name + " was replaced or dropped");
+                return target.profile;
+            }
+            return (GameProfile) spawnProfileField.get(packet);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A spawn profile must be the target's, with no texture or exactly one that the stand-in
+     * produced and signed as a pair.
+     *
+     * @return the skin hash it shows, or null for the default skin
+     */
+    private static String checkProfile(SimPlayer target, GameProfile profile) {
+        if (profile == null || !target.id.equals(profile.getId()) || !target.name.equals(profile.getName())) {
+            violation("Spawn profile for " + target.name + " belongs to someone else: "
+                + (profile == null ? "null" : profile.getName()));
+            return null;
+        }
+        Collection<Property> textures = profile.getProperties().get("textures");
+        if (textures.isEmpty()) {
+            return null;
+        }
+        if (textures.size() != 1) {
+            violation("Spawn profile for " + target.name + " has " + textures.size() + " texture properties");
+            return null;
+        }
+        Property texture = textures.iterator().next();
+        TextureInfo info = TextureInfo.decode(texture.getValue());
+        String hash = info != null ? info.getSkinHash() : null;
+        if (hash == null || hash.length() != 64 || !hash.substring(0, 32).equals(hash.substring(32))) {
+            violation("Spawn profile for " + target.name + " has an unreadable texture");
+            return null;
+        }
+        if (!MojangStandInServer.signature(hash.substring(0, 32)).equals(texture.getSignature())) {
+            violation("Spawn profile for " + target.name + " has a texture with another skin's signature");
+        }
+        return hash;
+    }
+
+    /**
+     * Wait for in-flight commands, then until one pass finds every pool idle.
+     */
+    private static boolean settle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (throttle.getInFlightCount() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        SkinJobScheduler[] pools = {
+            SkinManager.getScheduler(), SkinFetchPipeline.getResolveStage(), SkinFetchPipeline.getTextureStage()
+        };
+        boolean idle = false;
+        while (!idle) {
+            idle = true;
+            for (SkinJobScheduler pool : pools) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                // A job finishing in one pool may have queued work in another, so go round until none had any
+                if (!pool.awaitDrained(0, SkinJobScheduler.JobClass.values())) {
+                    idle = false;
+                    if (!pool.awaitDrained(remaining, SkinJobScheduler.JobClass.values())) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Every online player must show exactly the skin stored for them, in their session and in a fresh spawn packet.
+     *
+     * @return number of mismatches put down to injected fetch failures when not strict
+     */
+    private static int checkConsistency(SimPlayer[] players, boolean strict) {
+        int unresolved = 0;
+        for (SimPlayer player : players) {
+            SkinStorage.SkinData stored = SkinStorage.getSkin(player.uuid);
+            String expected = stored != null ? expectedHash(stored.skinSource) : null;
+            if (stored != null && stored.skinHash != null && !stored.skinHash.equals(expected)) {
+                violation(player.name + " is stored as " + stored.skinSource + " but its texture metadata says " + stored.skinHash);
+            }
+
+            synchronized (player) {
+                if (player.channel == null) {
+                    continue;
+                }
+                PlayerSession session = PlayerSessions.get(player.id);
+                if (session == null) {
+                    violation(player.name + " is online without a session");
+                    continue;
+                }
+                GameProfile sent = writeSpawn(player.channel, player);
+                String shown = checkProfile(player, sent);
+                if (expected == null ? shown == null : expected.equals(shown)) {
+                    continue;
+                }
+                if (strict) {
+                    violation(player.name + " is stored as " + (stored != null ? stored.skinSource : "no skin")
+                        + " but shows " + (shown != null ? shown : "the default skin"));
+                } else {
+                    unresolved++;
+                }
+            }
+        }
+        return unresolved;
+    }
+
+    /**
+     * skins.json must hold exactly what is in memory.
+     */
+    private static void checkPersistence(SimPlayer[] players) throws Exception {
+        SkinStorage.save();
+        File file = new File(SkinStorage.getDataDir(), "skins.json");
+        Map<String, SkinStorage.SkinData> onDisk = new HashMap<String, SkinStorage.SkinData>();
+        if (file.isFile()) {
+            FileReader reader = new FileReader(file);
+            try {
+                Map<String, SkinStorage.SkinData> read =
+                    GSON.fromJson(reader, new TypeToken<Map<String, SkinStorage.SkinData>>() {}.getType());
+                if (read != null) {
+                    onDisk.putAll(read);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        for (SimPlayer player : players) {
+            SkinStorage.SkinData inMemory = SkinStorage.getSkin(player.uuid);
+            SkinStorage.SkinData saved = onDisk.get(player.uuid);
+            String memorySource = inMemory != null ? inMemory.skinSource : null;
+            String savedSource = saved != null ? saved.skinSource : null;
+            if (memorySource == null ? savedSource != null : !memorySource.equals(savedSource)) {
+                violation(player.name + " is " + memorySource + " in memory but " + savedSource + " in skins.json");
+            }
+        }
+    }
+
+    private static void leaveAll(SimPlayer[] players) {
+        for (SimPlayer player : players) {
+            leave(player);
+        }
+    }
+
+    /**
+     * Nothing may outlive the players, commands and jobs it was created for.
+     */
+    private static void checkLeaks(SimPlayer[] players) {
+        if (PlayerSessions.size() != 0) {
+            violation(PlayerSessions.size() + " sessions left after everyone left");
+        }
+        if (throttle.getInFlightCount() != 0) {
+            violation(throttle.getInFlightCount() + " commands still in flight");
+        }
+        if (PendingSkinChanges.size() != 0) {
+            violation(PendingSkinChanges.size() + " pending skin changes never completed");
+        }
+        int stored = 0;
+        for (SimPlayer player : players) {
+            if (SkinStorage.hasSkin(player.uuid)) {
+                stored++;
+            }
+        }
+        if (SkinManager.getCachedSkinCount() > stored) {
+            violation(SkinManager.getCachedSkinCount() + " cached skins for " + stored + " players with a stored skin");
+        }
+        int queued = SkinManager.getScheduler().getTotalQueueDepth()
+            + SkinFetchPipeline.getResolveStage().getTotalQueueDepth() + SkinFetchPipeline.getTextureStage().getTotalQueueDepth();
+        if (queued != 0) {
+            violation(queued + " jobs still queued");
+        }
+    }
+
+    private static String expectedHash(String skinName) {
+        String uuid = MojangStandInServer.uuidFor(skinName);
+        return uuid + uuid;
+    }
+
+    private static Field findProfileField() {
+        for (Field field : S0CPacketSpawnPlayer.class.getDeclaredFields()) {
+            if (field.getType() == GameProfile.class) {
+                field.setAccessible(true);
+                return field;
+            }
+        }
+        throw new IllegalStateException("S0CPacketSpawnPlayer has no GameProfile field");
+    }
+
+    private static void violation(String message) {
+        violationCount.incrementAndGet();
+        if (violations.size() < 20) {
+            violations.add(message);
+        }
+    }
+
+    private static void printLatency(String label, LatencyHistogram histogram) {
+        System.out.println(String.format("%s: n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+            label, histogram.getCount(), histogram.getMeanMillis(), histogram.getPercentileMillis(50),
+            histogram.getPercentileMillis(99), histogram.getMaxMillis()));
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --name value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static double doubleOption(Map<String, String> options, String name, double defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * A thread repeating one step until stopped.
+     */
+    private abstract static class Background implements Runnable {
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        Background(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        abstract void step() throws InterruptedException;
+
+        void start() {
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    step();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    violation(thread.getName() + " threw " + e);
+                }
+            }
+        }
+    }
+}
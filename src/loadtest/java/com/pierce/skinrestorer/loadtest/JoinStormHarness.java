@@ -0,0 +1,262 @@
+package com.pierce.skinrestorer.loadtest;
+
+import com.mojang.authlib.GameProfile;
+import com.pierce.skinrestorer.metrics.LatencyHistogram;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
+import com.pierce.skinrestorer.skin.HarnessHooks;
+import com.pierce.skinrestorer.skin.SkinFetchPipeline;
+import com.pierce.skinrestorer.skin.SkinFetcher;
+import com.pierce.skinrestorer.skin.SkinJobScheduler;
+import com.pierce.skinrestorer.skin.SkinManager;
+import com.pierce.skinrestorer.skin.SkinSnapshot;
+import com.pierce.skinrestorer.skin.Upstream;
+import com.pierce.skinrestorer.skin.UpstreamGroup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates a join storm against a local Mojang stand-in.
+ *
+ * Every simulated player joins at once and is resolved through the real scheduler and
+ * fetcher as a LOGIN job, while /skin set commands arrive alongside as COMMAND jobs.
+ * A join counts as done when its profile is published to the spawn-packet cache, which is
+ * the point where other players would see the skin.
+ *
+ * Options (all optional, "--name value"):
+ *   --players 500      simulated joins
+ *   --commands 100     /skin set commands issued during the storm
+ *   --skins 200        distinct skin names the players use
+ *   --unknown 0.02     fraction of skin names that do not exist
+ *   --latency 80       stand-in response time in ms
+ *   --jitter 40        extra random response time in ms
+ *   --errors 0.01      fraction of responses that are 500s
+ *   --ratelimit 0.02   fraction of responses that are 429s
+ *   --timeout 120      seconds to wait for the storm to finish
+ *   --mirrors 0        extra stand-ins used as further upstreams, to exercise hedging and failover
+ */
+public class JoinStormHarness {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int players = intOption(options, "players", 500);
+        int commands = intOption(options, "commands", 100);
+        int skins = Math.max(1, intOption(options, "skins", 200));
+        double unknown = doubleOption(options, "unknown", 0.02);
+        int timeoutSeconds = intOption(options, "timeout", 120);
+        int mirrors = intOption(options, "mirrors", 0);
+
+        MojangStandInServer.Settings settings = new MojangStandInServer.Settings();
+        settings.latencyMillis = intOption(options, "latency", 80);
+        settings.jitterMillis = intOption(options, "jitter", 40);
+        settings.errorRate = doubleOption(options, "errors", 0.01);
+        settings.rateLimitRate = doubleOption(options, "ratelimit", 0.02);
+
+        MojangStandInServer server = new MojangStandInServer(settings);
+        server.start();
+        List<MojangStandInServer> mirrorServers = new ArrayList<MojangStandInServer>();
+        List<String> baseUrls = new ArrayList<String>();
+        baseUrls.add(server.getBaseUrl());
+        for (int i = 0; i < mirrors; i++) {
+            MojangStandInServer mirror = new MojangStandInServer(settings);
+            mirror.start();
+            mirrorServers.add(mirror);
+            baseUrls.add(mirror.getBaseUrl());
+        }
+        SkinFetcher.setBaseUrls(baseUrls, baseUrls);
+        SkinManager.start();
+
+        String[] skinNames = new String[skins];
+        int unknownEvery = unknown > 0 ? (int) Math.max(1, Math.round(1 / unknown)) : 0;
+        for (int i = 0; i < skins; i++) {
+            boolean missing = unknownEvery > 0 && i % unknownEvery == unknownEvery - 1;
+            skinNames[i] = (missing ? "unknown" : "skin") + i;
+        }
+
+        ResourceSampler sampler = new ResourceSampler();
+        sampler.start();
+
+        final LatencyHistogram joinLatency = new LatencyHistogram();
+        final LatencyHistogram commandLatency = new LatencyHistogram();
+        final AtomicInteger joinFailures = new AtomicInteger();
+        final AtomicInteger commandFailures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(players + commands);
+
+        long stormStart = System.nanoTime();
+        int commandEvery = commands > 0 ? Math.max(1, players / commands) : 0;
+        int commandsSent = 0;
+        for (int i = 0; i < players; i++) {
+            submit(SkinJobScheduler.JobClass.LOGIN, "player" + i, skinNames[i % skins],
+                joinLatency, joinFailures, done);
+
+            if (commandEvery > 0 && commandsSent < commands && i % commandEvery == 0) {
+                submit(SkinJobScheduler.JobClass.COMMAND, "player" + i, skinNames[(i * 7 + 3) % skins],
+                    commandLatency, commandFailures, done);
+                commandsSent++;
+            }
+        }
+        while (commandsSent < commands) {
+            submit(SkinJobScheduler.JobClass.COMMAND, "player" + commandsSent, skinNames[commandsSent % skins],
+                commandLatency, commandFailures, done);
+            commandsSent++;
+        }
+
+        boolean finished = done.await(timeoutSeconds, TimeUnit.SECONDS);
+        long wallMillis = (System.nanoTime() - stormStart) / 1000000L;
+        sampler.stop();
+
+        System.out.println("=== Join storm ===");
+        System.out.println("Players: " + players + ", commands: " + commands + ", distinct skins: " + skins
+            + ", stand-in latency: " + settings.latencyMillis + "+" + settings.jitterMillis + "ms");
+        if (!finished) {
+            System.out.println("TIMED OUT after " + timeoutSeconds + "s with " + done.getCount() + " jobs left");
+        }
+        System.out.println("Wall time: " + wallMillis + "ms");
+        printLatency("Join to skin visible", joinLatency, joinFailures.get());
+        printLatency("Command to skin applied", commandLatency, commandFailures.get());
+        System.out.println("Stand-in: " + server.getRequests() + " requests, " + server.getRateLimited() + " 429s, "
+            + server.getErrors() + " 500s, " + server.getNotFound() + " unknown names");
+        for (MojangStandInServer mirror : mirrorServers) {
+            System.out.println("Mirror: " + mirror.getRequests() + " requests, " + mirror.getRateLimited() + " 429s, "
+                + mirror.getErrors() + " 500s");
+        }
+        StringBuilder timeouts = new StringBuilder("Timeouts in effect:");
+        for (SkinFetcher.Endpoint endpoint : SkinFetcher.Endpoint.values()) {
+            timeouts.append(' ').append(endpoint.name().toLowerCase()).append('=')
+                .append(SkinFetcher.getTimeoutMillis(endpoint)).append("ms");
+        }
+        System.out.println(timeouts);
+        if (mirrors > 0) {
+            System.out.println("Hedged requests: " + SkinMetrics.get(SkinMetrics.Counter.HEDGED_REQUESTS));
+            for (UpstreamGroup group : new UpstreamGroup[] {SkinFetcher.getApiUpstreams(), SkinFetcher.getSessionUpstreams()}) {
+                for (Upstream upstream : group.getUpstreams()) {
+                    System.out.println(String.format("  %s %s: avg %.1fms, %d ok, %d failed, %d hedge wins",
+                        group.getName(), upstream.getBaseUrl(), upstream.getAverageMillis(),
+                        upstream.getSuccesses(), upstream.getFailures(), upstream.getHedgeWins()));
+                }
+            }
+        }
+        System.out.println("Threads: peak " + sampler.peakThreads + " (baseline " + sampler.baselineThreads + ")");
+        System.out.println("Heap: peak " + sampler.peakHeap.get() / (1024 * 1024) + "MB");
+
+        SkinManager.shutdown();
+        server.stop();
+        for (MojangStandInServer mirror : mirrorServers) {
+            mirror.stop();
+        }
+        System.exit(finished ? 0 : 1);
+    }
+
+    /**
+     * Resolve one skin the way the mod does and publish it, timing from submission.
+     */
+    private static void submit(SkinJobScheduler.JobClass jobClass, final String playerName, final String skinName,
+                               final LatencyHistogram latency, final AtomicInteger failures,
+                               final CountDownLatch done) {
+        final long submitted = System.nanoTime();
+        SkinFetchPipeline.fetch(skinName, jobClass, true, new SkinFetchPipeline.Callback() {
+            @Override
+            public void onComplete(SkinSnapshot snapshot) {
+                try {
+                    if (snapshot == null) {
+                        failures.incrementAndGet();
+                        return;
+                    }
+                    UUID uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + playerName).getBytes());
+                    HarnessHooks.seedProfile(uuid.toString(), snapshot.createProfile(new GameProfile(uuid, playerName)));
+                    latency.recordSince(submitted);
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+    }
+
+    private static void printLatency(String label, LatencyHistogram histogram, int failures) {
+        System.out.println(String.format("%s: n=%d failed=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+            label, histogram.getCount(), failures, histogram.getMeanMillis(),
+            histogram.getPercentileMillis(50), histogram.getPercentileMillis(90),
+            histogram.getPercentileMillis(99), histogram.getMaxMillis()));
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --name value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static double doubleOption(Map<String, String> options, String name, double defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * Polls thread count and heap usage while the storm runs.
+     */
+    private static final class ResourceSampler implements Runnable {
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private final AtomicLong peakHeap = new AtomicLong();
+        private volatile boolean running = true;
+        private Thread thread;
+        int baselineThreads;
+        int peakThreads;
+
+        void start() {
+            baselineThreads = threads.getThreadCount();
+            threads.resetPeakThreadCount();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            thread = new Thread(this, "LoadTest-Sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+            peakThreads = threads.getPeakThreadCount();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                long heap = 0;
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP) {
+                        heap += pool.getUsage().getUsed();
+                    }
+                }
+                if (heap > peakHeap.get()) {
+                    peakHeap.set(heap);
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.pierce.skinrestorer.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Base64;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process imitation of api.mojang.com and sessionserver.mojang.com.
+ *
+ * Serves the three endpoints SkinFetcher uses, with configurable latency, server errors
+ * and 429 rate limiting. Names starting with "unknown" do not exist. UUIDs and textures
+ * are derived from the name, so repeated runs see the same data.
+ */
+public class MojangStandInServer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static class Settings {
+        public int latencyMillis = 80;
+        public int jitterMillis = 40;
+        public double errorRate = 0.0;       // Fraction of requests answered with 500
+        public double rateLimitRate = 0.0;   // Fraction of requests answered with 429
+        public int threads = 64;
+    }
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+
+    public MojangStandInServer(Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        this.executor = Executors.newFixedThreadPool(settings.threads);
+        server.setExecutor(executor);
+
+        server.createContext("/users/profiles/minecraft/", new InjectingHandler() {
+            @Override
+            void serve(HttpExchange exchange) throws IOException {
+                String name = lastPathSegment(exchange);
+                if (!exists(name)) {
+                    notFound.incrementAndGet();
+                    respond(exchange, 204, null);
+                    return;
+                }
+                respond(exchange, 200, profileStub(name).toString());
+            }
+        });
+
+        server.createContext("/profiles/minecraft", new InjectingHandler() {
+            @Override
+            void serve(HttpExchange exchange) throws IOException {
+                JsonArray names = new JsonParser().parse(readBody(exchange)).getAsJsonArray();
+                JsonArray result = new JsonArray();
+                for (JsonElement element : names) {
+                    String name = element.getAsString();
+                    if (exists(name)) {
+                        result.add(profileStub(name));
+                    }
+                }
+                respond(exchange, 200, result.toString());
+            }
+        });
+
+        server.createContext("/session/minecraft/profile/", new InjectingHandler() {
+            @Override
+            void serve(HttpExchange exchange) throws IOException {
+                String uuid = lastPathSegment(exchange);
+                JsonObject profile = new JsonObject();
+                profile.add("id", new JsonPrimitive(uuid));
+                profile.add("name", new JsonPrimitive("standin"));
+
+                JsonObject textures = new JsonObject();
+                textures.add("name", new JsonPrimitive("textures"));
+                textures.add("value", new JsonPrimitive(textureValue(uuid)));
+                textures.add("signature", new JsonPrimitive(signature(uuid)));
+                JsonArray properties = new JsonArray();
+                properties.add(textures);
+                profile.add("properties", properties);
+
+                respond(exchange, 200, profile.toString());
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getNotFound() {
+        return notFound.get();
+    }
+
+    private static boolean exists(String name) {
+        return !name.toLowerCase().startsWith("unknown");
+    }
+
+    static String uuidFor(String name) {
+        return UUID.nameUUIDFromBytes(name.toLowerCase().getBytes(UTF8)).toString().replace("-", "");
+    }
+
+    private static JsonObject profileStub(String name) {
+        JsonObject stub = new JsonObject();
+        stub.add("id", new JsonPrimitive(uuidFor(name)));
+        stub.add("name", new JsonPrimitive(name));
+        return stub;
+    }
+
+    private static String textureValue(String uuid) {
+        String json = "{\"timestamp\":" + System.currentTimeMillis() + ",\"profileId\":\"" + uuid
+            + "\",\"profileName\":\"standin\",\"textures\":{\"SKIN\":{\"url\":"
+            + "\"http://textures.minecraft.net/texture/" + uuid + uuid + "\"}}}";
+        return Base64.getEncoder().encodeToString(json.getBytes(UTF8));
+    }
+
+    static String signature(String uuid) {
+        byte[] bytes = new byte[512];
+        new Random(uuid.hashCode()).nextBytes(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private static String lastPathSegment(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), UTF8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(UTF8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Adds latency and fault injection in front of an endpoint.
+     */
+    private abstract class InjectingHandler implements HttpHandler {
+
+        abstract void serve(HttpExchange exchange) throws IOException;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                int delay = settings.latencyMillis + (settings.jitterMillis > 0 ? random.nextInt(settings.jitterMillis + 1) : 0);
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+
+                double roll = random.nextDouble();
+                if (roll < settings.rateLimitRate) {
+                    rateLimited.incrementAndGet();
+                    respond(exchange, 429, "{\"error\":\"TooManyRequestsException\"}");
+                } else if (roll < settings.rateLimitRate + settings.errorRate) {
+                    errors.incrementAndGet();
+                    respond(exchange, 500, "{\"error\":\"InternalServerError\"}");
+                } else {
+                    serve(exchange);
+                }
+            } catch (InterruptedException e) {
+                exchange.close();
+            } catch (RuntimeException e) {
+                respond(exchange, 400, "{\"error\":\"" + e.getClass().getSimpleName() + "\"}");
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.pierce.skinrestorer.skin;
+
+import com.mojang.authlib.GameProfile;
+import com.pierce.skinrestorer.metrics.JoinTracer;
+import com.pierce.skinrestorer.network.SkinPacketHandler;
+import io.netty.channel.Channel;
+
+import java.util.UUID;
+
+/**
+ * Entry points into package-private skin state, so the harnesses can drive the mod without a server.
+ * Lives only in the loadtest source set and is not part of the mod.
+ */
+public final class HarnessHooks {
+
+    private HarnessHooks() {
+    }
+
+    /**
+     * Put a modified profile straight into the spawn-packet cache.
+     */
+    public static void seedProfile(String playerUUID, GameProfile profile) {
+        SkinManager.seedProfile(playerUUID, profile);
+    }
+
+    /**
+     * Join with a session that has no player entity, injecting the handler into a channel
+     * and resolving the stored skin like a real login. Only the spawn profile is updated.
+     */
+    public static PlayerSession joinDetached(UUID id, String name, Channel channel) {
+        PlayerSession session = PlayerSessions.openDetached(id, name);
+        SkinPacketHandler.injectChannel(session, channel);
+        SkinManager.resolveJoinSkin(session);
+        return session;
+    }
+
+    /**
+     * Counterpart of joinDetached. Does nothing for a real player's session.
+     */
+    public static void leaveDetached(UUID id) {
+        PlayerSession session = PlayerSessions.get(id);
+        if (session == null || session.getPlayer() != null) {
+            return;
+        }
+        SkinStorage.touch(session.getUUID());
+        JoinTracer.left(session.getUUID());
+        SkinPacketHandler.removeChannel(session);
+        PlayerSessions.closeDetached(session);
+    }
+}
@@ -3,7 +3,13 @@ package com.pierce.skinrestorer;
 import com.pierce.skinrestorer.command.SkinCommand;
 import com.pierce.skinrestorer.config.ModConfig;
 import com.pierce.skinrestorer.handler.PlayerEventHandler;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
 import com.pierce.skinrestorer.network.SkinPacketHandler;
+import com.pierce.skinrestorer.skin.PendingSkinChanges;
+import com.pierce.skinrestorer.skin.SkinCacheSnapshot;
+import com.pierce.skinrestorer.skin.SkinJobScheduler;
+import com.pierce.skinrestorer.skin.SkinManager;
+import com.pierce.skinrestorer.skin.SkinPresets;
 import com.pierce.skinrestorer.skin.SkinStorage;
 import cpw.mods.fml.common.FMLCommonHandler;
 import cpw.mods.fml.common.Mod;
@@ -59,6 +65,8 @@ public class PierceSkinRestorer {
         // Initialize skin storage
         dataDir = new File(event.getModConfigurationDirectory().getParentFile(), "skinrestorer");
         SkinStorage.init(dataDir);
+        SkinPresets.init(dataDir);
+        PendingSkinChanges.init(dataDir);
     }
 
     @EventHandler
@@ -80,12 +88,54 @@ public class PierceSkinRestorer {
 
         // Initialize packet handler for skin injection
         SkinPacketHandler.init();
+
+        // Start the skin worker pool
+        SkinManager.start();
+
+        // Start with a warm skin cache if a snapshot was left by the last shutdown (or a backup).
+        // Runs in the background because it waits for skins.json to finish loading.
+        final File snapshot = getWarmSnapshotFile();
+        if (snapshot != null && snapshot.isFile()) {
+            SkinManager.submit(SkinJobScheduler.JobClass.BACKGROUND, "snapshot import", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        SkinCacheSnapshot.importFrom(snapshot);
+                    } catch (Exception e) {
+                        LOGGER.error("Failed to import skin cache snapshot " + snapshot, e);
+                    }
+                }
+            });
+        }
+
+        // Expose runtime metrics to JMX monitoring
+        SkinMetrics.registerMBean();
     }
 
     @EventHandler
     public void serverStopping(FMLServerStoppingEvent event) {
         LOGGER.info("Server stopping - saving skin data");
+        SkinManager.shutdown();
+        SkinStorage.awaitLoaded();
         SkinStorage.save();
+        SkinMetrics.unregisterMBean();
+
+        File snapshot = getWarmSnapshotFile();
+        if (snapshot != null) {
+            try {
+                SkinCacheSnapshot.export(snapshot);
+            } catch (Exception e) {
+                LOGGER.error("Failed to export skin cache snapshot " + snapshot, e);
+            }
+        }
+    }
+
+    private File getWarmSnapshotFile() {
+        String name = ModConfig.warmSnapshotFile;
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        return new File(dataDir, name.trim());
     }
 
     public File getDataDir() {
@@ -0,0 +1,173 @@
+package com.pierce.skinrestorer.command;
+
+import com.pierce.skinrestorer.config.ModConfig;
+import com.pierce.skinrestorer.skin.PendingSkinChanges;
+import com.pierce.skinrestorer.skin.SkinJobScheduler;
+import net.minecraft.command.ICommandSender;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Per-player throttling for /skin set and /skin reload, and in-flight tracking for admin sets.
+ *
+ * Each player has at most one request in flight. A new request from the same player
+ * joins the pending one if it asks for the same thing, or replaces it otherwise, so only
+ * the latest wish is fetched and applied. A cooldown between finished requests and a
+ * server-wide cap on concurrent requests keep one player from using up the fetch budget.
+ */
+public class CommandThrottle {
+
+    public enum Kind {
+        SET,
+        RELOAD
+    }
+
+    public enum Result {
+        STARTED,     // Caller must start a worker for this player
+        SUPERSEDED,  // Pending request replaced, the running worker will pick it up
+        JOINED,      // Identical request already pending
+        COOLDOWN,    // Player finished a request too recently
+        BUSY         // Too many requests in flight server-wide
+    }
+
+    /**
+     * An immutable player request. Replaced, never modified, when superseded.
+     */
+    public static final class Request {
+        public final Kind kind;
+        public final String target; // Skin username for SET, null for RELOAD
+        public final ICommandSender requester; // Admin or console who asked for the player, null if the player did
+
+        Request(Kind kind, String target, ICommandSender requester) {
+            this.kind = kind;
+            this.target = target;
+            this.requester = requester;
+        }
+
+        boolean sameAs(Kind otherKind, String otherTarget) {
+            return kind == otherKind && (target == null ? otherTarget == null : target.equalsIgnoreCase(otherTarget));
+        }
+    }
+
+    // Player UUID -> latest pending request
+    private final Map<String, Request> inFlight = new HashMap<String, Request>();
+
+    // Player UUID -> time their last request finished
+    private final Map<String, Long> lastCompleted = new HashMap<String, Long>();
+
+    /**
+     * Try to start or update a request for a player. A started or superseding request is also
+     * recorded in PendingSkinChanges, under this lock, so the worker cannot finish it (and
+     * complete the record) before it is recorded.
+     */
+    public synchronized Result tryAcquire(String playerUUID, String playerName, Kind kind, String target) {
+        return acquire(playerUUID, playerName, kind, target, null);
+    }
+
+    /**
+     * Start or update a SET that an admin or the console makes for a player. Tracked like the
+     * player's own requests, so it is ordered against them and against /skin clear, but never
+     * held back by the cooldown or the server-wide cap: those pace players, not admins.
+     */
+    public synchronized Result tryAcquireFor(String playerUUID, String playerName, String target, ICommandSender requester) {
+        return acquire(playerUUID, playerName, Kind.SET, target, requester);
+    }
+
+    private Result acquire(String playerUUID, String playerName, Kind kind, String target, ICommandSender requester) {
+        Request existing = inFlight.get(playerUUID);
+        if (existing != null) {
+            if (existing.sameAs(kind, target)) {
+                return Result.JOINED;
+            }
+            inFlight.put(playerUUID, new Request(kind, target, requester));
+            recordPending(playerUUID, playerName, kind, target);
+            return Result.SUPERSEDED;
+        }
+
+        if (requester == null) {
+            if (getCooldownRemainingMillis(playerUUID) > 0) {
+                return Result.COOLDOWN;
+            }
+            if (inFlight.size() >= ModConfig.maxConcurrentCommands) {
+                return Result.BUSY;
+            }
+        }
+
+        inFlight.put(playerUUID, new Request(kind, target, requester));
+        recordPending(playerUUID, playerName, kind, target);
+        return Result.STARTED;
+    }
+
+    private static void recordPending(String playerUUID, String playerName, Kind kind, String target) {
+        PendingSkinChanges.add(playerUUID, playerName,
+            kind == Kind.SET ? PendingSkinChanges.Kind.SET : PendingSkinChanges.Kind.RELOAD,
+            target, SkinJobScheduler.JobClass.COMMAND);
+    }
+
+    /**
+     * The request a worker should run next for this player, or null if none.
+     */
+    public synchronized Request current(String playerUUID) {
+        return inFlight.get(playerUUID);
+    }
+
+    /**
+     * Mark a request as finished.
+     *
+     * @return true if the player is done, false if a newer request arrived and should be run next
+     */
+    public synchronized boolean complete(String playerUUID, Request finished) {
+        if (inFlight.get(playerUUID) != finished) {
+            return false;
+        }
+
+        inFlight.remove(playerUUID);
+        if (finished.requester == null) {
+            lastCompleted.put(playerUUID, System.currentTimeMillis());
+            pruneCooldowns();
+        }
+        return true;
+    }
+
+    /**
+     * Drop a player's request whose worker could not be started, together with its
+     * PendingSkinChanges record, so it is not resumed after a restart either.
+     */
+    public synchronized void abandon(String playerUUID) {
+        inFlight.remove(playerUUID);
+        PendingSkinChanges.cancel(playerUUID);
+    }
+
+    /**
+     * Milliseconds before this player may start another request.
+     */
+    public synchronized long getCooldownRemainingMillis(String playerUUID) {
+        Long last = lastCompleted.get(playerUUID);
+        if (last == null) {
+            return 0;
+        }
+        return Math.max(0, last + ModConfig.commandCooldownSeconds * 1000L - System.currentTimeMillis());
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Drop expired cooldown entries so the map stays proportional to active players.
+     */
+    private void pruneCooldowns() {
+        if (lastCompleted.size() < 256) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - ModConfig.commandCooldownSeconds * 1000L;
+        Iterator<Long> it = lastCompleted.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() < cutoff) {
+                it.remove();
+            }
+        }
+    }
+}
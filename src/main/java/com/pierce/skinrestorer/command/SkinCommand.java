@@ -2,17 +2,46 @@ package com.pierce.skinrestorer.command;
 
 import com.pierce.skinrestorer.PierceSkinRestorer;
 import com.pierce.skinrestorer.config.ModConfig;
+import com.pierce.skinrestorer.metrics.JoinTracer;
+import com.pierce.skinrestorer.metrics.LatencyHistogram;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
+import com.pierce.skinrestorer.skin.NameIndex;
+import com.pierce.skinrestorer.skin.PlayerSession;
+import com.pierce.skinrestorer.skin.PlayerSessions;
+import com.pierce.skinrestorer.skin.SkinBatch;
+import com.pierce.skinrestorer.skin.SkinCacheSnapshot;
+import com.pierce.skinrestorer.skin.SkinFetchPipeline;
+import com.pierce.skinrestorer.skin.SkinFetcher;
+import com.pierce.skinrestorer.skin.SkinJobScheduler;
 import com.pierce.skinrestorer.skin.SkinManager;
+import com.pierce.skinrestorer.skin.SkinPresets;
+import com.pierce.skinrestorer.skin.SkinSnapshot;
+import com.pierce.skinrestorer.skin.SkinStorage;
+import com.pierce.skinrestorer.skin.TextureInfo;
+import com.pierce.skinrestorer.skin.Upstream;
+import com.pierce.skinrestorer.skin.UpstreamGroup;
 import net.minecraft.command.CommandBase;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.command.WrongUsageException;
 import net.minecraft.entity.player.EntityPlayerMP;
-import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.ChatComponentText;
 import net.minecraft.util.EnumChatFormatting;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 /**
  * /skin command for setting player skins.
@@ -20,6 +49,22 @@ import java.util.List;
  */
 public class SkinCommand extends CommandBase {
 
+    // Subcommands of /skin preset that cannot be used as preset names
+    private static final List<String> RESERVED_PRESET_NAMES = Arrays.asList("list", "capture", "remove", "reload");
+
+    // Most player names /skin wearing prints
+    private static final int MAX_WEARERS_LISTED = 20;
+    private static final Pattern SKIN_HASH = Pattern.compile("[0-9a-fA-F]{16,64}");
+
+    // Fixed tab completions
+    private static final NameIndex SUBCOMMANDS = new NameIndex(Arrays.asList("set", "clear", "reload", "preset", "queue",
+        "reloadall", "import", "cancel", "stats", "slowjoins", "config", "snapshot", "compact", "upstreams", "wearing"));
+    private static final NameIndex CONFIG_SUBCOMMANDS = new NameIndex(Arrays.asList("reload"));
+    private static final NameIndex SNAPSHOT_SUBCOMMANDS = new NameIndex(Arrays.asList("export", "import"));
+    private static final NameIndex RESERVED_PRESET_INDEX = new NameIndex(RESERVED_PRESET_NAMES);
+
+    private final CommandThrottle throttle = new CommandThrottle();
+
     @Override
     public String getCommandName() {
         return "skin";
@@ -27,7 +72,7 @@ public class SkinCommand extends CommandBase {
 
     @Override
     public String getCommandUsage(ICommandSender sender) {
-        return "/skin <set|clear|reload> [username] OR /skin <player> set <username>";
+        return "/skin <set|clear|reload> [username] OR /skin preset <name|list> OR /skin <player> set <username> OR /skin <reloadall|import|cancel|queue|stats|slowjoins|config|snapshot|compact|upstreams|wearing>";
     }
 
     @Override
@@ -57,12 +102,51 @@ public class SkinCommand extends CommandBase {
 
         String subCommand = args[0].toLowerCase();
 
+        // Admin commands, available to ops and console
+        if (subCommand.equals("queue")) {
+            handleQueue(sender);
+            return;
+        } else if (subCommand.equals("reloadall")) {
+            handleReloadAll(sender, args);
+            return;
+        } else if (subCommand.equals("import")) {
+            handleImport(sender, args);
+            return;
+        } else if (subCommand.equals("cancel")) {
+            handleCancel(sender);
+            return;
+        } else if (subCommand.equals("stats")) {
+            handleStats(sender);
+            return;
+        } else if (subCommand.equals("slowjoins")) {
+            handleSlowJoins(sender);
+            return;
+        } else if (subCommand.equals("config")) {
+            handleConfig(sender, args);
+            return;
+        } else if (subCommand.equals("preset")) {
+            handlePreset(sender, args);
+            return;
+        } else if (subCommand.equals("snapshot")) {
+            handleSnapshot(sender, args);
+            return;
+        } else if (subCommand.equals("compact")) {
+            handleCompact(sender);
+            return;
+        } else if (subCommand.equals("upstreams")) {
+            handleUpstreams(sender);
+            return;
+        } else if (subCommand.equals("wearing")) {
+            handleWearing(sender, args);
+            return;
+        }
+
         // Console can only use admin commands
         if (!(sender instanceof EntityPlayerMP)) {
             if (args.length >= 3 && args[1].equalsIgnoreCase("set")) {
                 handleAdminSetFromConsole(sender, args);
             } else {
-                throw new WrongUsageException("Console usage: /skin <player> set <username>");
+                throw new WrongUsageException("Console usage: /skin <player> set <username> OR /skin <reloadall|import|cancel|queue|stats|slowjoins|config|snapshot|compact|upstreams|wearing>");
             }
             return;
         }
@@ -91,170 +175,798 @@ public class SkinCommand extends CommandBase {
             return;
         }
 
-        final String targetUsername = args[1];
-        sendMessage(player, "Fetching skin for " + targetUsername + "...");
+        String targetUsername = args[1];
+        CommandThrottle.Result result = throttle.tryAcquire(
+            player.getUniqueID().toString(), player.getCommandSenderName(), CommandThrottle.Kind.SET, targetUsername);
+
+        switch (result) {
+            case STARTED:
+                sendMessage(player, "Fetching skin for " + targetUsername + "...");
+                startPlayerWorker(player);
+                break;
+            case SUPERSEDED:
+                sendMessage(player, "Your pending skin request was changed to " + targetUsername);
+                break;
+            default:
+                sendThrottleFeedback(player, result, "Already fetching skin for " + targetUsername + ", please wait...");
+                break;
+        }
+    }
 
-        // Run async to not block server
-        new Thread(new Runnable() {
+    private void handlePreset(ICommandSender sender, String[] args) {
+        // /skin preset <name> | list | capture <name> <player> | remove <name> | reload
+        if (args.length < 2) {
+            sendError(sender, "Usage: /skin preset <name|list|capture|remove|reload>");
+            return;
+        }
+
+        String action = args[1].toLowerCase();
+        if (action.equals("list")) {
+            List<String> names = SkinPresets.getNames();
+            if (names.isEmpty()) {
+                sendMessage(sender, "No skin presets defined");
+            } else {
+                sendMessage(sender, "Skin presets: " + joinNames(names));
+            }
+        } else if (action.equals("capture")) {
+            handlePresetCapture(sender, args);
+        } else if (action.equals("remove")) {
+            if (!requireAdmin(sender)) {
+                return;
+            }
+            if (args.length < 3) {
+                sendError(sender, "Usage: /skin preset remove <name>");
+            } else if (SkinPresets.remove(args[2])) {
+                sendSuccess(sender, "Removed preset " + args[2].toLowerCase());
+            } else {
+                sendError(sender, "No preset named " + args[2]);
+            }
+        } else if (action.equals("reload")) {
+            if (!requireAdmin(sender)) {
+                return;
+            }
+            handlePresetReload(sender);
+        } else if (sender instanceof EntityPlayerMP) {
+            EntityPlayerMP player = (EntityPlayerMP) sender;
+            if (throttle.current(player.getUniqueID().toString()) != null) {
+                sendError(player, "Your previous skin request is still running, please wait...");
+            } else if (SkinManager.setSkinPreset(player, args[1])) {
+                sendSuccess(player, "Skin set to preset " + args[1].toLowerCase());
+            } else {
+                sendError(player, "No preset named " + args[1] + ". Use /skin preset list");
+            }
+        } else {
+            sendError(sender, "Console usage: /skin preset <list|capture|remove|reload>");
+        }
+    }
+
+    private void handlePresetCapture(final ICommandSender sender, String[] args) {
+        // /skin preset capture <name> <player>
+        if (!requireAdmin(sender)) {
+            return;
+        }
+        if (args.length < 4) {
+            sendError(sender, "Usage: /skin preset capture <name> <online player>");
+            return;
+        }
+
+        String presetName = args[2];
+        if (RESERVED_PRESET_NAMES.contains(presetName.toLowerCase())) {
+            sendError(sender, presetName + " is reserved, pick another preset name");
+            return;
+        }
+
+        EntityPlayerMP source = PlayerSessions.getPlayer(args[3]);
+        if (source == null) {
+            sendError(sender, "Player " + args[3] + " not found");
+            return;
+        }
+
+        SkinSnapshot snapshot = SkinManager.getCurrentSkin(source);
+        if (snapshot == null) {
+            sendError(sender, source.getCommandSenderName() + " has no skin to capture");
+            return;
+        }
+
+        final String name = presetName.toLowerCase();
+        final String sourceName = source.getCommandSenderName();
+        final SkinSnapshot captured = snapshot;
+        // Saving presets.json and finding the players using the preset touch files, so not on the server thread
+        boolean submitted = submitCommandJob("capture preset " + name, new Runnable() {
             @Override
             public void run() {
-                try {
-                    boolean success = SkinManager.setSkinByUsername(player, targetUsername);
-                    if (success) {
-                        sendSuccess(player, "Skin set to " + targetUsername);
-                        sendMessage(player, "Other players will see your new skin when you respawn or rejoin.");
-                    } else {
-                        sendError(player, "Failed to fetch skin for " + targetUsername);
-                        sendMessage(player, "Make sure the username exists and has a valid Mojang account.");
-                    }
-                } catch (Exception e) {
-                    PierceSkinRestorer.LOGGER.error("Error setting skin", e);
-                    sendError(player, "Error: " + e.getMessage());
+                SkinPresets.put(name, captured);
+                int players = SkinManager.reapplyPreset(name);
+                sendSuccess(sender, "Saved " + sourceName + "'s skin as preset " + name
+                    + (players > 0 ? " (updated " + players + " players using it)" : ""));
+                if (captured.getTextureSignature() == null) {
+                    sendError(sender, "Warning: this skin has no signature, so clients may not display it");
                 }
             }
-        }, "SkinFetcher-" + player.getCommandSenderName()).start();
+        });
+        if (!submitted) {
+            sendError(sender, "The skin service is not running");
+        }
+    }
+
+    private void handlePresetReload(final ICommandSender sender) {
+        boolean submitted = submitCommandJob("reload presets", new Runnable() {
+            @Override
+            public void run() {
+                int loaded = SkinPresets.load();
+                int players = SkinManager.reapplyPreset(null);
+                sendSuccess(sender, "Loaded " + loaded + " presets, re-applied to " + players + " stored players");
+            }
+        });
+        if (!submitted) {
+            sendError(sender, "The skin service is not running");
+        }
+    }
+
+    private static String joinNames(List<String> names) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : names) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(name);
+        }
+        return sb.toString();
     }
 
     private void handleClear(EntityPlayerMP player) {
+        // A set still in flight would land after the clear and bring the skin back
+        if (throttle.current(player.getUniqueID().toString()) != null) {
+            sendError(player, "Your previous skin request is still running, please wait...");
+            return;
+        }
         SkinManager.clearSkin(player);
         sendSuccess(player, "Skin cleared");
         sendMessage(player, "You will appear with the default skin to other players.");
     }
 
     private void handleReload(final EntityPlayerMP player) {
-        sendMessage(player, "Reloading skin...");
+        CommandThrottle.Result result = throttle.tryAcquire(
+            player.getUniqueID().toString(), player.getCommandSenderName(), CommandThrottle.Kind.RELOAD, null);
+
+        switch (result) {
+            case STARTED:
+                sendMessage(player, "Reloading skin...");
+                startPlayerWorker(player);
+                break;
+            case SUPERSEDED:
+                sendMessage(player, "Your pending skin request was changed to a reload");
+                break;
+            default:
+                sendThrottleFeedback(player, result, "Already reloading your skin, please wait...");
+                break;
+        }
+    }
+
+    private void sendThrottleFeedback(EntityPlayerMP player, CommandThrottle.Result result, String joinedMessage) {
+        if (result == CommandThrottle.Result.JOINED) {
+            sendMessage(player, joinedMessage);
+        } else if (result == CommandThrottle.Result.COOLDOWN) {
+            long seconds = (throttle.getCooldownRemainingMillis(player.getUniqueID().toString()) + 999) / 1000;
+            sendError(player, "Please wait " + seconds + "s before changing your skin again");
+        } else if (result == CommandThrottle.Result.BUSY) {
+            sendError(player, "The skin service is busy, please try again in a moment");
+        }
+    }
 
-        new Thread(new Runnable() {
+    /**
+     * Run a player's pending set/reload requests until none are left.
+     * If the player changes their mind while a fetch is running, the newest request runs next.
+     */
+    private void startPlayerWorker(final EntityPlayerMP player) {
+        final String playerUUID = player.getUniqueID().toString();
+
+        // Run async to not block server
+        boolean submitted = submitCommandJob("command " + player.getCommandSenderName(), new Runnable() {
             @Override
             public void run() {
-                try {
-                    boolean success = SkinManager.reloadSkin(player);
-                    if (success) {
-                        sendSuccess(player, "Skin reloaded");
-                    } else {
-                        sendMessage(player, "No saved skin found. Use /skin set <username> first.");
+                CommandThrottle.Request request;
+                while ((request = throttle.current(playerUUID)) != null) {
+                    try {
+                        if (request.requester != null) {
+                            runAdminSet(request.requester, player, request.target);
+                        } else if (request.kind == CommandThrottle.Kind.SET) {
+                            runSet(player, request.target);
+                        } else {
+                            runReload(player);
+                        }
+                    } catch (Exception e) {
+                        PierceSkinRestorer.LOGGER.error("Error running skin command", e);
+                        sendError(request.requester != null ? request.requester : player, "Error: " + e.getMessage());
+                    }
+                    if (throttle.complete(playerUUID, request)) {
+                        return;
                     }
-                } catch (Exception e) {
-                    PierceSkinRestorer.LOGGER.error("Error reloading skin", e);
-                    sendError(player, "Error: " + e.getMessage());
                 }
             }
-        }, "SkinReload-" + player.getCommandSenderName()).start();
+        });
+
+        if (!submitted) {
+            CommandThrottle.Request request = throttle.current(playerUUID);
+            throttle.abandon(playerUUID);
+            sendError(request != null && request.requester != null ? request.requester : player,
+                "The skin service is not running");
+        }
+    }
+
+    private void runSet(EntityPlayerMP player, String targetUsername) {
+        boolean success = SkinManager.setSkinByUsername(player, targetUsername);
+        if (success) {
+            sendSuccess(player, "Skin set to " + targetUsername);
+            sendMessage(player, "Other players will see your new skin when you respawn or rejoin.");
+        } else {
+            sendError(player, "Failed to fetch skin for " + targetUsername);
+            sendMessage(player, "Make sure the username exists and has a valid Mojang account.");
+        }
     }
 
-    private void handleAdminSet(final EntityPlayerMP sender, String[] args) {
+    private void runReload(EntityPlayerMP player) {
+        boolean success = SkinManager.reloadSkin(player);
+        if (success) {
+            sendSuccess(player, "Skin reloaded");
+        } else {
+            sendMessage(player, "No saved skin found. Use /skin set <username> first.");
+        }
+    }
+
+    private void handleAdminSet(EntityPlayerMP sender, String[] args) {
         // /skin <player> set <username>
         // Requires OP level 2
         if (!sender.canCommandSenderUseCommand(2, "skin.admin")) {
             sendError(sender, "You don't have permission to change other players' skins");
             return;
         }
+        startAdminSet(sender, args[0], args[2]);
+    }
 
-        String targetPlayerName = args[0];
-        final String targetSkinUsername = args[2];
+    private void handleAdminSetFromConsole(ICommandSender sender, String[] args) {
+        // /skin <player> set <username> - from console
+        startAdminSet(sender, args[0], args[2]);
+    }
 
-        final EntityPlayerMP targetPlayer = MinecraftServer.getServer()
-            .getConfigurationManager()
-            .func_152612_a(targetPlayerName); // getPlayerByUsername
+    /**
+     * Set another player's skin. Runs through the player's own request slot, so it waits for
+     * (or replaces) their pending request, and /skin clear cannot slip in while it is fetching.
+     */
+    private void startAdminSet(ICommandSender sender, String targetPlayerName, String targetSkinUsername) {
+        EntityPlayerMP targetPlayer = PlayerSessions.getPlayer(targetPlayerName);
 
         if (targetPlayer == null) {
             sendError(sender, "Player " + targetPlayerName + " not found");
             return;
         }
 
-        sendMessage(sender, "Setting " + targetPlayerName + "'s skin to " + targetSkinUsername + "...");
+        CommandThrottle.Result result = throttle.tryAcquireFor(targetPlayer.getUniqueID().toString(),
+            targetPlayer.getCommandSenderName(), targetSkinUsername, sender);
+        if (result == CommandThrottle.Result.STARTED) {
+            sendMessage(sender, "Setting " + targetPlayer.getCommandSenderName() + "'s skin to " + targetSkinUsername + "...");
+            startPlayerWorker(targetPlayer);
+        } else if (result == CommandThrottle.Result.SUPERSEDED) {
+            sendMessage(sender, targetPlayer.getCommandSenderName() + "'s pending skin request was changed to " + targetSkinUsername);
+        } else {
+            sendMessage(sender, "Already setting " + targetPlayer.getCommandSenderName() + "'s skin to " + targetSkinUsername + ", please wait...");
+        }
+    }
+
+    private void runAdminSet(ICommandSender sender, EntityPlayerMP targetPlayer, String targetSkinUsername) {
+        boolean success = SkinManager.setSkinByUsername(targetPlayer, targetSkinUsername);
+        if (success) {
+            String by = sender instanceof EntityPlayerMP ? sender.getCommandSenderName() : "console";
+            sendSuccess(sender, "Set " + targetPlayer.getCommandSenderName() + "'s skin to " + targetSkinUsername);
+            sendSuccess(targetPlayer, "Your skin was set to " + targetSkinUsername + " by " + by);
+        } else {
+            sendError(sender, "Failed to fetch skin for " + targetSkinUsername);
+        }
+    }
+
+    private boolean requireAdmin(ICommandSender sender) {
+        if (sender instanceof EntityPlayerMP && !sender.canCommandSenderUseCommand(2, "skin.admin")) {
+            sendError(sender, "You don't have permission to use this command");
+            return false;
+        }
+        return true;
+    }
+
+    private void handleQueue(ICommandSender sender) {
+        if (!requireAdmin(sender)) {
+            return;
+        }
+
+        SkinJobScheduler scheduler = SkinManager.getScheduler();
+        if (scheduler == null) {
+            sender.addChatMessage(new ChatComponentText(EnumChatFormatting.RED + "Skin worker pool is not running"));
+            return;
+        }
+        sendQueue(sender, "Job queue", scheduler);
+        sendQueue(sender, "Name resolve stage", SkinFetchPipeline.getResolveStage());
+        sendQueue(sender, "Texture stage", SkinFetchPipeline.getTextureStage());
+    }
+
+    private void sendQueue(ICommandSender sender, String title, SkinJobScheduler scheduler) {
+        if (scheduler == null) {
+            return;
+        }
+        sender.addChatMessage(new ChatComponentText(EnumChatFormatting.GRAY + "[Skin] " + EnumChatFormatting.WHITE
+            + title + " (" + scheduler.getWorkerCount() + " threads):"));
+        for (SkinJobScheduler.JobClass jobClass : SkinJobScheduler.JobClass.values()) {
+            sender.addChatMessage(new ChatComponentText(String.format("  %s: %d queued, %d started, avg wait %.1fms, max wait %.1fms",
+                jobClass.name(),
+                scheduler.getQueueDepth(jobClass),
+                scheduler.getStartedCount(jobClass),
+                scheduler.getAverageWaitMillis(jobClass),
+                scheduler.getMaxWaitMillis(jobClass))));
+        }
+    }
+
+    private void handleStats(ICommandSender sender) {
+        if (!requireAdmin(sender)) {
+            return;
+        }
+
+        sendMessage(sender, "Skin metrics:");
+        for (SkinMetrics.Timer timer : SkinMetrics.Timer.values()) {
+            LatencyHistogram histogram = SkinMetrics.timer(timer);
+            sender.addChatMessage(new ChatComponentText(String.format("  %s: %d, avg %.2fms, p50 %.2fms, p99 %.2fms, max %.2fms",
+                timer.name().toLowerCase(), histogram.getCount(), histogram.getMeanMillis(),
+                histogram.getPercentileMillis(50), histogram.getPercentileMillis(99), histogram.getMaxMillis())));
+        }
+        for (SkinMetrics.Cache cache : SkinMetrics.Cache.values()) {
+            long hits = SkinMetrics.getCacheHits(cache);
+            long misses = SkinMetrics.getCacheMisses(cache);
+            sender.addChatMessage(new ChatComponentText(String.format("  %s cache: %d hits, %d misses (%.1f%% hit)",
+                cache.name().toLowerCase(), hits, misses, hits + misses == 0 ? 0.0 : hits * 100.0 / (hits + misses))));
+        }
+        for (SkinMetrics.Counter counter : SkinMetrics.Counter.values()) {
+            sender.addChatMessage(new ChatComponentText("  " + counter.name().toLowerCase() + ": " + SkinMetrics.get(counter)));
+        }
+        sender.addChatMessage(new ChatComponentText("  last storage save: " + SkinMetrics.getLastSaveEntries()
+            + " entries, " + SkinMetrics.getLastSaveBytes() + " bytes"));
+        sender.addChatMessage(new ChatComponentText("  storage load: " + (SkinStorage.isLoaded() ? "done in " : "running for ")
+            + SkinStorage.getLoadMillis() + "ms, " + SkinStorage.getOnDemandLookups() + " on-demand lookups"));
+        sender.addChatMessage(new ChatComponentText("  distinct skins worn: " + SkinStorage.getDistinctSkinCount()));
+
+        SkinJobScheduler scheduler = SkinManager.getScheduler();
+        if (scheduler != null) {
+            sender.addChatMessage(new ChatComponentText("  job queue depth: " + scheduler.getTotalQueueDepth()));
+        }
+        SkinJobScheduler resolveStage = SkinFetchPipeline.getResolveStage();
+        SkinJobScheduler textureStage = SkinFetchPipeline.getTextureStage();
+        if (resolveStage != null && textureStage != null) {
+            sender.addChatMessage(new ChatComponentText("  fetch pipeline depth: " + resolveStage.getTotalQueueDepth()
+                + " resolving, " + textureStage.getTotalQueueDepth() + " fetching textures, "
+                + SkinFetchPipeline.getUuidCacheSize() + " cached UUIDs"));
+        }
+    }
+
+    private void handleSlowJoins(ICommandSender sender) {
+        if (!requireAdmin(sender)) {
+            return;
+        }
+
+        List<JoinTracer.Trace> slowJoins = JoinTracer.getSlowJoins();
+        if (slowJoins.isEmpty()) {
+            sendMessage(sender, "No joins slower than " + ModConfig.slowJoinThresholdMillis + "ms recorded");
+            return;
+        }
+
+        sendMessage(sender, "Recent joins slower than " + ModConfig.slowJoinThresholdMillis + "ms (newest first):");
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss");
+        for (JoinTracer.Trace trace : slowJoins) {
+            sender.addChatMessage(new ChatComponentText("  " + time.format(new Date(trace.getStartedAt())) + " " + trace));
+        }
+    }
+
+    private void handleWearing(ICommandSender sender, String[] args) {
+        // /skin wearing <player|skinHash>
+        if (!requireAdmin(sender)) {
+            return;
+        }
+        if (args.length < 2) {
+            sendError(sender, "Usage: /skin wearing <player|skinHash>");
+            return;
+        }
+
+        String skinHash;
+        TextureInfo info = null;
+        EntityPlayerMP target = PlayerSessions.getPlayer(args[1]);
+        if (target != null) {
+            SkinSnapshot current = SkinManager.getCurrentSkin(target);
+            info = current != null ? current.getInfo() : null;
+            if (info == null || info.getSkinHash() == null) {
+                sendError(sender, target.getCommandSenderName() + " is wearing the default skin");
+                return;
+            }
+            skinHash = info.getSkinHash();
+        } else if (SKIN_HASH.matcher(args[1]).matches()) {
+            skinHash = args[1].toLowerCase();
+        } else {
+            sendError(sender, "No online player or skin hash " + args[1]);
+            return;
+        }
+
+        List<String> wearers = SkinStorage.getWearers(skinHash);
+        sendMessage(sender, "Skin " + (info != null ? info.toString() : skinHash) + " is worn by " + wearers.size() + " stored players");
+        List<String> names = new ArrayList<String>();
+        for (String playerUUID : wearers) {
+            SkinStorage.SkinData data = SkinStorage.getSkin(playerUUID);
+            if (data != null) {
+                names.add(data.playerName);
+            }
+            if (names.size() == MAX_WEARERS_LISTED) {
+                break;
+            }
+        }
+        if (!names.isEmpty()) {
+            Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+            sender.addChatMessage(new ChatComponentText("  " + joinNames(names)
+                + (wearers.size() > names.size() ? " and " + (wearers.size() - names.size()) + " more" : "")));
+        }
+    }
+
+    private void handleUpstreams(ICommandSender sender) {
+        if (!requireAdmin(sender)) {
+            return;
+        }
+
+        sendMessage(sender, "Upstreams (hedged requests: " + SkinMetrics.get(SkinMetrics.Counter.HEDGED_REQUESTS) + "):");
+        for (UpstreamGroup group : new UpstreamGroup[] {SkinFetcher.getApiUpstreams(), SkinFetcher.getSessionUpstreams()}) {
+            for (Upstream upstream : group.getUpstreams()) {
+                sender.addChatMessage(new ChatComponentText(String.format("  %s %s: %s, avg %.0fms, p99 %.0fms, %d ok, %d failed, %d hedge wins",
+                    group.getName(), upstream.getBaseUrl(), upstream.isHealthy() ? "up" : "DOWN",
+                    Math.max(0, upstream.getAverageMillis()), upstream.getLatency().getPercentileMillis(99),
+                    upstream.getSuccesses(), upstream.getFailures(), upstream.getHedgeWins())));
+            }
+        }
 
-        new Thread(new Runnable() {
+        StringBuilder timeouts = new StringBuilder("  timeouts in effect:");
+        for (SkinFetcher.Endpoint endpoint : SkinFetcher.Endpoint.values()) {
+            timeouts.append(' ').append(endpoint.name().toLowerCase()).append(' ')
+                .append(SkinFetcher.getTimeoutMillis(endpoint)).append("ms");
+        }
+        sender.addChatMessage(new ChatComponentText(timeouts.toString()));
+    }
+
+    private void handleCompact(final ICommandSender sender) {
+        if (!requireAdmin(sender)) {
+            return;
+        }
+        if (ModConfig.retentionDays <= 0) {
+            sendMessage(sender, "Retention is disabled (retentionDays = 0) - nothing will be archived");
+        }
+
+        boolean submitted = SkinManager.compactStorage(new SkinManager.CompactionCallback() {
             @Override
-            public void run() {
-                try {
-                    boolean success = SkinManager.setSkinByUsername(targetPlayer, targetSkinUsername);
-                    if (success) {
-                        sendSuccess(sender, "Set " + targetPlayer.getCommandSenderName() + "'s skin to " + targetSkinUsername);
-                        sendSuccess(targetPlayer, "Your skin was set to " + targetSkinUsername + " by " + sender.getCommandSenderName());
-                    } else {
-                        sendError(sender, "Failed to fetch skin for " + targetSkinUsername);
-                    }
-                } catch (Exception e) {
-                    PierceSkinRestorer.LOGGER.error("Error setting admin skin", e);
-                    sendError(sender, "Error: " + e.getMessage());
-                }
+            public void onComplete(int archived) {
+                sendSuccess(sender, "Archived " + archived + " dormant skin entries, "
+                    + SkinStorage.getAllSkins().size() + " remain in skins.json");
             }
-        }, "SkinFetcher-Admin").start();
+        });
+        if (submitted) {
+            sendMessage(sender, "Compacting skin storage...");
+        } else {
+            sendError(sender, "The skin service is not running");
+        }
     }
 
-    private void handleAdminSetFromConsole(final ICommandSender sender, String[] args) {
-        // /skin <player> set <username> - from console
-        String targetPlayerName = args[0];
-        final String targetSkinUsername = args[2];
+    private void handleConfig(ICommandSender sender, String[] args) {
+        // /skin config [reload]
+        if (!requireAdmin(sender)) {
+            return;
+        }
 
-        final EntityPlayerMP targetPlayer = MinecraftServer.getServer()
-            .getConfigurationManager()
-            .func_152612_a(targetPlayerName); // getPlayerByUsername
+        if (args.length >= 2 && args[1].equalsIgnoreCase("reload")) {
+            Map<String, String> changes = ModConfig.reload();
+            SkinManager.applyConfig();
+            PierceSkinRestorer.LOGGER.info("Config reloaded by " + sender.getCommandSenderName() + ": " + changes);
 
-        if (targetPlayer == null) {
-            sender.addChatMessage(new ChatComponentText(EnumChatFormatting.RED + "Player " + targetPlayerName + " not found"));
+            if (changes.isEmpty()) {
+                sendSuccess(sender, "Config reloaded - no values changed");
+                return;
+            }
+            sendSuccess(sender, "Config reloaded - " + changes.size() + " value(s) changed:");
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                sender.addChatMessage(new ChatComponentText("  " + change.getKey() + ": " + change.getValue()));
+            }
+        } else if (args.length == 1) {
+            sendMessage(sender, "Current config:");
+            for (Map.Entry<String, Object> value : ModConfig.values().entrySet()) {
+                sender.addChatMessage(new ChatComponentText("  " + value.getKey() + " = " + value.getValue()));
+            }
+        } else {
+            sendError(sender, "Usage: /skin config [reload]");
+        }
+    }
+
+    private void handleReloadAll(ICommandSender sender, String[] args) {
+        // /skin reloadall [online|stored]
+        if (!requireAdmin(sender)) {
             return;
         }
 
-        sender.addChatMessage(new ChatComponentText("Setting " + targetPlayerName + "'s skin to " + targetSkinUsername + "..."));
+        boolean storedOnly = args.length >= 2 && args[1].equalsIgnoreCase("stored");
+        if (args.length >= 2 && !storedOnly && !args[1].equalsIgnoreCase("online")) {
+            sendError(sender, "Usage: /skin reloadall [online|stored]");
+            return;
+        }
 
-        new Thread(new Runnable() {
+        List<SkinBatch.Entry> entries = new ArrayList<SkinBatch.Entry>();
+        if (storedOnly) {
+            for (Map.Entry<String, SkinStorage.SkinData> stored : SkinStorage.getAllSkins().entrySet()) {
+                addReloadEntry(entries, stored.getKey(), stored.getValue());
+            }
+        } else {
+            for (PlayerSession session : PlayerSessions.all()) {
+                addReloadEntry(entries, session.getUUID(), SkinStorage.getSkin(session.getUUID()));
+            }
+        }
+
+        startBatch(sender, storedOnly ? "reload-stored" : "reload-online", entries);
+    }
+
+    private void addReloadEntry(List<SkinBatch.Entry> entries, String playerUUID, SkinStorage.SkinData stored) {
+        if (stored != null && stored.skinType == SkinStorage.SkinType.MOJANG_USERNAME) {
+            entries.add(new SkinBatch.Entry(playerUUID, stored.playerName, stored.skinSource, stored));
+        }
+    }
+
+    private void handleImport(ICommandSender sender, String[] args) {
+        // /skin import <file> - one "player skinUsername" (or "player=skinUsername") pair per line
+        if (!requireAdmin(sender)) {
+            return;
+        }
+        if (args.length < 2) {
+            sendError(sender, "Usage: /skin import <file in skinrestorer/>");
+            return;
+        }
+
+        List<SkinBatch.Entry> entries;
+        try {
+            File file = resolveDataFile(sender, args[1], true);
+            if (file == null) {
+                return;
+            }
+            entries = readImportFile(file);
+        } catch (IOException e) {
+            PierceSkinRestorer.LOGGER.error("Failed to read skin import file", e);
+            sendError(sender, "Failed to read " + args[1] + ": " + e.getMessage());
+            return;
+        }
+
+        startBatch(sender, "import", entries);
+    }
+
+    /**
+     * Resolve a file name given to a command, which must stay inside the skinrestorer folder.
+     *
+     * @return the file, or null (after telling the sender why) if it is not allowed or missing
+     */
+    private File resolveDataFile(ICommandSender sender, String name, boolean mustExist) throws IOException {
+        File dataDir = SkinStorage.getDataDir().getCanonicalFile();
+        File file = new File(dataDir, name).getCanonicalFile();
+        if (!file.getPath().startsWith(dataDir.getPath() + File.separator)) {
+            sendError(sender, "Files must be inside the skinrestorer folder");
+            return null;
+        }
+        if (mustExist && !file.isFile()) {
+            sendError(sender, "File not found: " + name);
+            return null;
+        }
+        return file;
+    }
+
+    private void handleSnapshot(final ICommandSender sender, String[] args) {
+        // /skin snapshot <export|import> [file]
+        if (!requireAdmin(sender)) {
+            return;
+        }
+        final boolean export = args.length >= 2 && args[1].equalsIgnoreCase("export");
+        if (args.length < 2 || (!export && !args[1].equalsIgnoreCase("import"))) {
+            sendError(sender, "Usage: /skin snapshot <export|import> [file in skinrestorer/]");
+            return;
+        }
+
+        String name = args.length >= 3 ? args[2]
+            : ModConfig.warmSnapshotFile.trim().isEmpty() ? "skincache.snapshot" : ModConfig.warmSnapshotFile.trim();
+        final File file;
+        try {
+            file = resolveDataFile(sender, name, !export);
+        } catch (IOException e) {
+            sendError(sender, "Invalid file " + name + ": " + e.getMessage());
+            return;
+        }
+        if (file == null) {
+            return;
+        }
+
+        sendMessage(sender, (export ? "Exporting skin cache to " : "Importing skin cache from ") + file.getName() + "...");
+        boolean submitted = submitCommandJob("snapshot " + (export ? "export" : "import"), new Runnable() {
             @Override
             public void run() {
                 try {
-                    boolean success = SkinManager.setSkinByUsername(targetPlayer, targetSkinUsername);
-                    if (success) {
-                        sender.addChatMessage(new ChatComponentText(EnumChatFormatting.GREEN + "Set " + targetPlayer.getCommandSenderName() + "'s skin to " + targetSkinUsername));
-                        sendSuccess(targetPlayer, "Your skin was set to " + targetSkinUsername + " by console");
-                    } else {
-                        sender.addChatMessage(new ChatComponentText(EnumChatFormatting.RED + "Failed to fetch skin for " + targetSkinUsername));
-                    }
+                    SkinCacheSnapshot.Result result = export ? SkinCacheSnapshot.export(file) : SkinCacheSnapshot.importFrom(file);
+                    sendSuccess(sender, (export ? "Exported " : "Imported ") + result);
                 } catch (Exception e) {
-                    PierceSkinRestorer.LOGGER.error("Error setting skin from console", e);
-                    sender.addChatMessage(new ChatComponentText(EnumChatFormatting.RED + "Error: " + e.getMessage()));
+                    PierceSkinRestorer.LOGGER.error("Skin cache snapshot " + (export ? "export" : "import") + " failed", e);
+                    sendError(sender, "Snapshot " + (export ? "export" : "import") + " failed: " + e.getMessage());
+                }
+            }
+        });
+        if (!submitted) {
+            sendError(sender, "The skin service is not running");
+        }
+    }
+
+    /**
+     * Parse an import file, resolving each player name to the UUID their skin is keyed by.
+     */
+    private List<SkinBatch.Entry> readImportFile(File file) throws IOException {
+        // Known players by lower-case name: stored entries first, online players override
+        Map<String, String> uuidsByName = new HashMap<String, String>();
+        for (Map.Entry<String, SkinStorage.SkinData> stored : SkinStorage.getAllSkins().entrySet()) {
+            if (stored.getValue().playerName != null) {
+                uuidsByName.put(stored.getValue().playerName.toLowerCase(), stored.getKey());
+            }
+        }
+        for (PlayerSession session : PlayerSessions.all()) {
+            uuidsByName.put(session.getName().toLowerCase(), session.getUUID());
+        }
+
+        List<SkinBatch.Entry> entries = new ArrayList<SkinBatch.Entry>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split("[\\s=,]+");
+                if (parts.length < 2) {
+                    PierceSkinRestorer.LOGGER.warn("Skipping malformed import line: " + line);
+                    continue;
+                }
+
+                String playerName = parts[0];
+                String uuid = uuidsByName.get(playerName.toLowerCase());
+                if (uuid == null) {
+                    // Offline-mode servers derive the UUID from the name
+                    uuid = UUID.nameUUIDFromBytes(("OfflinePlayer:" + playerName).getBytes("UTF-8")).toString();
                 }
+                entries.add(new SkinBatch.Entry(uuid, playerName, parts[1], SkinStorage.getSkin(uuid)));
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    private void startBatch(ICommandSender sender, String name, List<SkinBatch.Entry> entries) {
+        if (entries.isEmpty()) {
+            sendMessage(sender, "Nothing to do - no matching skin entries");
+            return;
+        }
+
+        SkinBatch batch = SkinBatch.start(name, entries, new BatchProgressReporter(sender));
+        if (batch == null) {
+            sendError(sender, "Another bulk operation is running. Use /skin cancel to stop it.");
+            return;
+        }
+
+        sendMessage(sender, "Started " + name + " for " + batch.getTotalPlayers() + " players ("
+            + batch.getTotalNames() + " distinct skins). Use /skin cancel to stop.");
+    }
+
+    private void handleCancel(ICommandSender sender) {
+        if (!requireAdmin(sender)) {
+            return;
+        }
+
+        SkinBatch batch = SkinBatch.getActive();
+        if (batch == null) {
+            sendMessage(sender, "No bulk operation is running");
+            return;
+        }
+
+        batch.cancel();
+        sendMessage(sender, "Cancelling " + batch.getName() + " - skins already fetched will still be applied");
+    }
+
+    /**
+     * Reports bulk progress to the admin who started it, at most every 10% of names.
+     */
+    private class BatchProgressReporter implements SkinBatch.Listener {
+
+        private final ICommandSender sender;
+        private int lastReportedTenth = 0;
+
+        BatchProgressReporter(ICommandSender sender) {
+            this.sender = sender;
+        }
+
+        @Override
+        public synchronized void onProgress(SkinBatch batch) {
+            int tenth = batch.getNamesDone() * 10 / Math.max(1, batch.getTotalNames());
+            if (tenth > lastReportedTenth && tenth < 10) {
+                lastReportedTenth = tenth;
+                sendMessage(sender, batch.getName() + ": " + batch.getNamesDone() + "/" + batch.getTotalNames()
+                    + " skins fetched (" + batch.getNamesFailed() + " failed)");
+            }
+        }
+
+        @Override
+        public void onFinished(SkinBatch batch) {
+            String summary = batch.getName() + (batch.isCancelled() ? " cancelled" : " finished") + ": applied to "
+                + batch.getPlayersApplied() + "/" + batch.getTotalPlayers() + " players, "
+                + batch.getNamesFailed() + " skins failed, " + batch.getElapsedMillis() + "ms";
+            if (batch.isCancelled() || batch.getNamesFailed() > 0) {
+                sendError(sender, summary);
+            } else {
+                sendSuccess(sender, summary);
             }
-        }, "SkinFetcher-Console").start();
+        }
+    }
+
+    /**
+     * Run a command's fetch on the skin worker pool instead of a new thread.
+     */
+    private boolean submitCommandJob(String description, Runnable task) {
+        return SkinManager.submit(SkinJobScheduler.JobClass.COMMAND, description, task);
     }
 
     @Override
     public List addTabCompletionOptions(ICommandSender sender, String[] args) {
         List<String> options = new ArrayList<String>();
+        String last = args[args.length - 1];
 
         if (args.length == 1) {
-            options.add("set");
-            options.add("clear");
-            options.add("reload");
-
-            // Add online player names for admin command
-            List<?> playerList = MinecraftServer.getServer().getConfigurationManager().playerEntityList;
-            for (Object obj : playerList) {
-                EntityPlayerMP p = (EntityPlayerMP) obj;
-                options.add(p.getCommandSenderName());
-            }
+            SUBCOMMANDS.collect(last, options);
+            // Online player names for admin command
+            PlayerSessions.getNames().collect(last, options);
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("config")) {
+            CONFIG_SUBCOMMANDS.collect(last, options);
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("snapshot")) {
+            SNAPSHOT_SUBCOMMANDS.collect(last, options);
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("preset")) {
+            RESERVED_PRESET_INDEX.collect(last, options);
+            SkinPresets.getNameIndex().collect(last, options);
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("set")) {
+            collectSkinNames(last, options);
         } else if (args.length == 2) {
             // If first arg is a player name, suggest "set"
-            EntityPlayerMP target = MinecraftServer.getServer()
-                .getConfigurationManager()
-                .func_152612_a(args[0]);
-            if (target != null) {
+            if (PlayerSessions.getNames().contains(args[0]) && "set".regionMatches(true, 0, last, 0, last.length())) {
                 options.add("set");
             }
+        } else if (args.length == 3 && args[1].equalsIgnoreCase("set")) {
+            collectSkinNames(last, options);
         }
 
-        return getListOfStringsMatchingLastWord(args, options.toArray(new String[0]));
+        return options;
+    }
+
+    /**
+     * Skin names worth suggesting: online players, then names other players already use.
+     */
+    private static void collectSkinNames(String prefix, List<String> options) {
+        NameIndex online = PlayerSessions.getNames();
+        online.collect(prefix, options);
+        SkinStorage.getSourceNames().collect(prefix, options, online);
     }
 
-    private void sendMessage(EntityPlayerMP player, String message) {
+    private void sendMessage(ICommandSender player, String message) {
         player.addChatMessage(new ChatComponentText(EnumChatFormatting.GRAY + "[Skin] " + EnumChatFormatting.WHITE + message));
     }
 
-    private void sendSuccess(EntityPlayerMP player, String message) {
+    private void sendSuccess(ICommandSender player, String message) {
         player.addChatMessage(new ChatComponentText(EnumChatFormatting.GRAY + "[Skin] " + EnumChatFormatting.GREEN + message));
     }
 
-    private void sendError(EntityPlayerMP player, String message) {
+    private void sendError(ICommandSender player, String message) {
         player.addChatMessage(new ChatComponentText(EnumChatFormatting.GRAY + "[Skin] " + EnumChatFormatting.RED + message));
     }
 }
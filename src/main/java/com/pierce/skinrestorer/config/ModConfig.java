@@ -4,6 +4,8 @@ import com.pierce.skinrestorer.PierceSkinRestorer;
 import net.minecraftforge.common.config.Configuration;
 
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Mod configuration handler.
@@ -12,10 +14,36 @@ public class ModConfig {
 
     private static Configuration config;
 
-    // Config values
-    public static int fetchTimeoutSeconds = 10;
-    public static boolean requirePermission = false;
-    public static boolean logDebug = false;
+    // Config values. Volatile, as /skin config reload changes them while worker and Netty threads read them
+    public static volatile int fetchTimeoutSeconds = 10;
+    public static volatile float timeoutFactor = 3.0f;
+    public static volatile int minTimeoutMillis = 1000;
+    public static volatile boolean requirePermission = false;
+    public static volatile boolean logDebug = false;
+    public static volatile int commandCooldownSeconds = 5;
+    public static volatile int maxConcurrentCommands = 8;
+    public static volatile int bulkRequestsPerMinute = 120;
+    public static volatile int bulkConcurrency = 4;
+    public static volatile int slowJoinThresholdMillis = 2000;
+    public static volatile int slowJoinHistory = 20;
+    public static volatile int workerThreads = 4;
+    public static volatile int resolveThreads = 2;
+    public static volatile int textureThreads = 4;
+    public static volatile int uuidCacheTtlMinutes = 1440;
+    public static volatile int jobStarvationMillis = 5000;
+    public static volatile int skinCacheTtlMinutes = 0;
+    public static volatile int maxRefreshesPerTick = 50;
+    public static volatile int refreshViewDistance = 256;
+    public static volatile String sharedCacheDir = "";
+    public static volatile String warmSnapshotFile = "";
+    public static volatile String apiUpstreams = "https://api.mojang.com";
+    public static volatile String sessionUpstreams = "https://sessionserver.mojang.com";
+    public static volatile int hedgePercentile = 95;
+    public static volatile int retentionDays = 90;
+    public static volatile int compactionIntervalMinutes = 60;
+    public static volatile int shutdownDrainSeconds = 5;
+    public static volatile boolean autoRestoreOwnSkin = false;
+    public static volatile int autoRestoreWindowMillis = 250;
 
     public static void init(File configFile) {
         if (config == null) {
@@ -33,7 +61,23 @@ public class ModConfig {
                 Configuration.CATEGORY_GENERAL,
                 10,
                 5, 60,
-                "Timeout for fetching skins from Mojang API in seconds"
+                "Longest timeout for a request to the Mojang API in seconds (used until response times are known)"
+            );
+
+            timeoutFactor = config.getFloat(
+                "timeoutFactor",
+                Configuration.CATEGORY_GENERAL,
+                3.0f,
+                0.0f, 20.0f,
+                "Request timeouts are this many times the p99 of recent response times per endpoint (0 = always fetchTimeoutSeconds)"
+            );
+
+            minTimeoutMillis = config.getInt(
+                "minTimeoutMillis",
+                Configuration.CATEGORY_GENERAL,
+                1000,
+                100, 30000,
+                "Shortest timeout the adaptive timeouts may use, in milliseconds"
             );
 
             requirePermission = config.getBoolean(
@@ -50,6 +94,193 @@ public class ModConfig {
                 "Enable debug logging"
             );
 
+            commandCooldownSeconds = config.getInt(
+                "commandCooldownSeconds",
+                Configuration.CATEGORY_GENERAL,
+                5,
+                0, 300,
+                "Seconds a player must wait after a /skin set or /skin reload finishes before starting another"
+            );
+
+            maxConcurrentCommands = config.getInt(
+                "maxConcurrentCommands",
+                Configuration.CATEGORY_GENERAL,
+                8,
+                1, 64,
+                "Maximum number of player /skin set and /skin reload requests in flight server-wide"
+            );
+
+            bulkRequestsPerMinute = config.getInt(
+                "bulkRequestsPerMinute",
+                Configuration.CATEGORY_GENERAL,
+                120,
+                10, 600,
+                "Mojang requests per minute used by /skin reloadall and /skin import"
+            );
+
+            bulkConcurrency = config.getInt(
+                "bulkConcurrency",
+                Configuration.CATEGORY_GENERAL,
+                4,
+                1, 16,
+                "Maximum concurrent Mojang requests used by /skin reloadall and /skin import"
+            );
+
+            slowJoinThresholdMillis = config.getInt(
+                "slowJoinThresholdMillis",
+                Configuration.CATEGORY_GENERAL,
+                2000,
+                0, 60000,
+                "Joins that take longer than this to show the player's skin are logged with a timing breakdown (0 to disable)"
+            );
+
+            slowJoinHistory = config.getInt(
+                "slowJoinHistory",
+                Configuration.CATEGORY_GENERAL,
+                20,
+                1, 200,
+                "Number of recent slow joins kept for /skin slowjoins"
+            );
+
+            workerThreads = config.getInt(
+                "workerThreads",
+                Configuration.CATEGORY_GENERAL,
+                4,
+                1, 32,
+                "Threads running skin commands and storage jobs (Mojang requests use resolveThreads and textureThreads)"
+            );
+
+            resolveThreads = config.getInt(
+                "resolveThreads",
+                Configuration.CATEGORY_GENERAL,
+                2,
+                1, 16,
+                "Threads looking up skin names at api.mojang.com"
+            );
+
+            textureThreads = config.getInt(
+                "textureThreads",
+                Configuration.CATEGORY_GENERAL,
+                4,
+                1, 32,
+                "Threads fetching signed textures from sessionserver.mojang.com"
+            );
+
+            uuidCacheTtlMinutes = config.getInt(
+                "uuidCacheTtlMinutes",
+                Configuration.CATEGORY_GENERAL,
+                1440,
+                0, 43200,
+                "How long a skin name's Mojang UUID is reused before it is looked up again (0 = always look up)"
+            );
+
+            jobStarvationMillis = config.getInt(
+                "jobStarvationMillis",
+                Configuration.CATEGORY_GENERAL,
+                5000,
+                500, 60000,
+                "A queued skin job that has waited this long runs next, regardless of priority"
+            );
+
+            skinCacheTtlMinutes = config.getInt(
+                "skinCacheTtlMinutes",
+                Configuration.CATEGORY_GENERAL,
+                0,
+                0, 10080,
+                "Cached skins older than this are still used on join, but re-fetched in the background (0 = never re-fetch)"
+            );
+
+            maxRefreshesPerTick = config.getInt(
+                "maxRefreshesPerTick",
+                Configuration.CATEGORY_GENERAL,
+                50,
+                1, 1000,
+                "Most players respawned for their viewers in one tick after a skin change; the rest wait for the next tick"
+            );
+
+            refreshViewDistance = config.getInt(
+                "refreshViewDistance",
+                Configuration.CATEGORY_GENERAL,
+                256,
+                16, 1024,
+                "Viewers further away than this (in blocks) are not sent a respawn when a skin changes"
+            );
+
+            sharedCacheDir = config.getString(
+                "sharedCacheDir",
+                Configuration.CATEGORY_GENERAL,
+                "",
+                "Directory shared by several servers on this machine to reuse each other's skin fetches (empty = disabled)"
+            );
+
+            warmSnapshotFile = config.getString(
+                "warmSnapshotFile",
+                Configuration.CATEGORY_GENERAL,
+                "",
+                "Skin cache snapshot in the skinrestorer folder, imported at startup and re-exported at shutdown (empty = disabled)"
+            );
+
+            apiUpstreams = config.getString(
+                "apiUpstreams",
+                Configuration.CATEGORY_GENERAL,
+                "https://api.mojang.com",
+                "Comma-separated servers answering name lookups like api.mojang.com (e.g. a caching mirror), in preference order"
+            );
+
+            sessionUpstreams = config.getString(
+                "sessionUpstreams",
+                Configuration.CATEGORY_GENERAL,
+                "https://sessionserver.mojang.com",
+                "Comma-separated servers answering profile requests like sessionserver.mojang.com, in preference order"
+            );
+
+            hedgePercentile = config.getInt(
+                "hedgePercentile",
+                Configuration.CATEGORY_GENERAL,
+                95,
+                0, 99,
+                "With several upstreams, a request slower than this percentile of recent ones is also sent to the next upstream (0 = only on errors)"
+            );
+
+            retentionDays = config.getInt(
+                "retentionDays",
+                Configuration.CATEGORY_GENERAL,
+                90,
+                0, 3650,
+                "Skins of players not seen for this many days move to skinrestorer/archive and come back at their next login (0 = keep all)"
+            );
+
+            compactionIntervalMinutes = config.getInt(
+                "compactionIntervalMinutes",
+                Configuration.CATEGORY_GENERAL,
+                60,
+                5, 10080,
+                "How often dormant skins are archived and skins.json is rewritten"
+            );
+
+            shutdownDrainSeconds = config.getInt(
+                "shutdownDrainSeconds",
+                Configuration.CATEGORY_GENERAL,
+                5,
+                0, 60,
+                "Longest the server waits at shutdown for skin logins and commands to finish; the rest are resumed at the next start"
+            );
+
+            autoRestoreOwnSkin = config.getBoolean(
+                "autoRestoreOwnSkin",
+                Configuration.CATEGORY_GENERAL,
+                false,
+                "Give players with no stored skin the Mojang skin of their own name when they join (for offline-mode servers)"
+            );
+
+            autoRestoreWindowMillis = config.getInt(
+                "autoRestoreWindowMillis",
+                Configuration.CATEGORY_GENERAL,
+                250,
+                0, 5000,
+                "Joining players' names are collected for this long and then looked up together, up to 10 per Mojang request"
+            );
+
         } catch (Exception e) {
             PierceSkinRestorer.LOGGER.error("Error loading config", e);
         } finally {
@@ -59,6 +290,66 @@ public class ModConfig {
         }
     }
 
+    /**
+     * Re-read the config file. Components read most values on every use, so changes apply
+     * straight away; the worker pool is resized by SkinManager.applyConfig().
+     *
+     * @return "name: old -> new" for every value that changed
+     */
+    public static synchronized Map<String, String> reload() {
+        Map<String, String> changes = new LinkedHashMap<String, String>();
+        if (config == null) {
+            return changes;
+        }
+
+        Map<String, Object> before = values();
+        loadConfig();
+        for (Map.Entry<String, Object> after : values().entrySet()) {
+            Object old = before.get(after.getKey());
+            if (!after.getValue().equals(old)) {
+                changes.put(after.getKey(), old + " -> " + after.getValue());
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Current values by config key.
+     */
+    public static Map<String, Object> values() {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put("fetchTimeoutSeconds", fetchTimeoutSeconds);
+        values.put("timeoutFactor", timeoutFactor);
+        values.put("minTimeoutMillis", minTimeoutMillis);
+        values.put("requirePermission", requirePermission);
+        values.put("logDebug", logDebug);
+        values.put("commandCooldownSeconds", commandCooldownSeconds);
+        values.put("maxConcurrentCommands", maxConcurrentCommands);
+        values.put("bulkRequestsPerMinute", bulkRequestsPerMinute);
+        values.put("bulkConcurrency", bulkConcurrency);
+        values.put("slowJoinThresholdMillis", slowJoinThresholdMillis);
+        values.put("slowJoinHistory", slowJoinHistory);
+        values.put("workerThreads", workerThreads);
+        values.put("resolveThreads", resolveThreads);
+        values.put("textureThreads", textureThreads);
+        values.put("uuidCacheTtlMinutes", uuidCacheTtlMinutes);
+        values.put("jobStarvationMillis", jobStarvationMillis);
+        values.put("skinCacheTtlMinutes", skinCacheTtlMinutes);
+        values.put("maxRefreshesPerTick", maxRefreshesPerTick);
+        values.put("refreshViewDistance", refreshViewDistance);
+        values.put("sharedCacheDir", sharedCacheDir);
+        values.put("warmSnapshotFile", warmSnapshotFile);
+        values.put("apiUpstreams", apiUpstreams);
+        values.put("sessionUpstreams", sessionUpstreams);
+        values.put("hedgePercentile", hedgePercentile);
+        values.put("retentionDays", retentionDays);
+        values.put("compactionIntervalMinutes", compactionIntervalMinutes);
+        values.put("shutdownDrainSeconds", shutdownDrainSeconds);
+        values.put("autoRestoreOwnSkin", autoRestoreOwnSkin);
+        values.put("autoRestoreWindowMillis", autoRestoreWindowMillis);
+        return values;
+    }
+
     public static void save() {
         if (config != null && config.hasChanged()) {
             config.save();
@@ -1,33 +1,40 @@
 package com.pierce.skinrestorer.handler;
 
 import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.skin.OwnSkinRestore;
 import com.pierce.skinrestorer.skin.SkinManager;
 import cpw.mods.fml.common.eventhandler.SubscribeEvent;
 import cpw.mods.fml.common.gameevent.PlayerEvent;
+import cpw.mods.fml.common.gameevent.TickEvent;
+import cpw.mods.fml.common.network.FMLNetworkEvent;
 import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.network.NetHandlerPlayServer;
 
 /**
- * Handles player join/leave events for skin management.
+ * Handles player join/leave events for skin management,
+ * and applies queued profile changes at the start of each server tick.
+ * Also schedules the periodic storage compaction.
  */
 public class PlayerEventHandler {
 
+    /**
+     * Fired once the FML handshake completes, just before the player is added to the world.
+     * Starting here lets the skin be ready before the first spawn packet goes out.
+     */
+    @SubscribeEvent
+    public void onServerConnectionFromClient(FMLNetworkEvent.ServerConnectionFromClientEvent event) {
+        if (event.handler instanceof NetHandlerPlayServer) {
+            EntityPlayerMP player = ((NetHandlerPlayServer) event.handler).playerEntity;
+            if (player != null) {
+                SkinManager.onPlayerLogin(player);
+            }
+        }
+    }
+
     @SubscribeEvent
     public void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
         if (event.player instanceof EntityPlayerMP) {
-            final EntityPlayerMP player = (EntityPlayerMP) event.player;
-
-            // Delay skin loading slightly to ensure player is fully connected
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        Thread.sleep(1000); // Wait 1 second for connection to stabilize
-                        SkinManager.onPlayerJoin(player);
-                    } catch (InterruptedException e) {
-                        // Ignore
-                    }
-                }
-            }, "SkinJoin-" + player.getCommandSenderName()).start();
+            SkinManager.onPlayerJoin((EntityPlayerMP) event.player);
         }
     }
 
@@ -39,4 +46,13 @@ public class PlayerEventHandler {
             PierceSkinRestorer.LOGGER.debug("Player logged out: " + player.getCommandSenderName());
         }
     }
+
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.START) {
+            SkinManager.processPendingUpdates();
+            SkinManager.maybeCompact();
+            OwnSkinRestore.tick();
+        }
+    }
 }
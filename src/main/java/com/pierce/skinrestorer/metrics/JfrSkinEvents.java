@@ -0,0 +1,150 @@
+package com.pierce.skinrestorer.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder backed events. Only loaded by SkinEvents once jdk.jfr is known to exist.
+ */
+final class JfrSkinEvents implements SkinEvents.Provider {
+
+    private static final String CATEGORY = "Pierce Skin Restorer";
+
+    JfrSkinEvents() {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IllegalStateException("Flight Recorder is not available");
+        }
+    }
+
+    @Override
+    public SkinEvents.HttpCall beginHttpCall(String endpoint, String url) {
+        HttpCallEvent event = new HttpCallEvent();
+        event.endpoint = endpoint;
+        event.url = url;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public SkinEvents.StorageIo beginStorage(String operation) {
+        StorageEvent event = new StorageEvent();
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public SkinEvents.SpawnRewrite beginSpawnRewrite() {
+        SpawnRewriteEvent event = new SpawnRewriteEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public SkinEvents.Refresh beginRefresh() {
+        RefreshEvent event = new RefreshEvent();
+        event.begin();
+        return event;
+    }
+
+    @Name("com.pierce.skinrestorer.HttpCall")
+    @Label("Mojang HTTP Call")
+    @Description("A request to the Mojang API or session server")
+    @Category({CATEGORY, "Mojang"})
+    static final class HttpCallEvent extends Event implements SkinEvents.HttpCall {
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("URL")
+        String url;
+
+        @Label("Status")
+        @Description("HTTP status, or -1 if no response was received")
+        int status;
+
+        @Override
+        public void end(int status) {
+            this.status = status;
+            commit();
+        }
+    }
+
+    @Name("com.pierce.skinrestorer.Storage")
+    @Label("Skin Storage I/O")
+    @Description("A load or save of skins.json")
+    @Category({CATEGORY, "Storage"})
+    static final class StorageEvent extends Event implements SkinEvents.StorageIo {
+        @Label("Operation")
+        String operation;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Entries")
+        int entries;
+
+        @Label("Success")
+        boolean success;
+
+        @Override
+        public void end(long bytes, int entries, boolean success) {
+            this.bytes = bytes;
+            this.entries = entries;
+            this.success = success;
+            commit();
+        }
+    }
+
+    // Stack traces are off for the per-packet event, which fires on every player spawn
+    @Name("com.pierce.skinrestorer.SpawnRewrite")
+    @Label("Spawn Packet Rewrite")
+    @Description("A spawn packet checked for a custom skin on its way to a viewer")
+    @Category({CATEGORY, "Network"})
+    @StackTrace(false)
+    static final class SpawnRewriteEvent extends Event implements SkinEvents.SpawnRewrite {
+        @Label("Player")
+        String player;
+
+        @Label("Rewritten")
+        boolean rewritten;
+
+        @Override
+        public void end(String player, boolean rewritten) {
+            if (shouldCommit()) {
+                this.player = player;
+                this.rewritten = rewritten;
+                commit();
+            }
+        }
+    }
+
+    @Name("com.pierce.skinrestorer.Refresh")
+    @Label("Skin Refresh")
+    @Description("Respawning players for their viewers after a skin change")
+    @Category({CATEGORY, "Network"})
+    static final class RefreshEvent extends Event implements SkinEvents.Refresh {
+        @Label("Targets")
+        int targets;
+
+        @Label("Viewers")
+        int viewers;
+
+        @Label("Spawn Packets")
+        int spawnPackets;
+
+        @Override
+        public void end(int targets, int viewers, int spawnPackets) {
+            this.targets = targets;
+            this.viewers = viewers;
+            this.spawnPackets = spawnPackets;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.pierce.skinrestorer.metrics;
+
+import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.config.ModConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-join skin latency timelines.
+ *
+ * A trace starts when a player with a stored skin logs in and records when each stage of
+ * getting their skin in front of other players is reached. It finishes when the first spawn
+ * packet carrying the skin is sent, the fetch fails, or the player leaves. Joins slower than
+ * slowJoinThresholdMillis are logged with their breakdown and kept in a small rolling window
+ * for /skin slowjoins.
+ *
+ * Stages may be marked from the login thread, skin workers, Netty event loops and the server thread.
+ */
+public class JoinTracer {
+
+    public enum Stage {
+        LOGIN("login"),
+        CACHE_LOOKUP("cache lookup"),
+        JOB_STARTED("queued"),
+        UUID_RESOLVED("uuid"),
+        PROFILE_FETCHED("profile fetch"),
+        PROFILE_PUBLISHED("published"),
+        PROFILE_APPLIED("applied"),
+        FIRST_SPAWN_SENT("first spawn");
+
+        public final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    public enum Outcome {
+        SPAWNED,    // A viewer was sent the skinned profile
+        FAILED,     // The skin could not be fetched
+        NO_VIEWER   // The player left before anyone was sent their skin
+    }
+
+    // Traces older than this are dropped, e.g. a player standing alone in a world for ages
+    private static final long MAX_TRACE_NANOS = 10L * 60 * 1000000000L;
+
+    // Player UUID -> trace in progress
+    private static final Map<String, Trace> active = new ConcurrentHashMap<String, Trace>();
+
+    // Most recent slow joins, oldest first
+    private static final ArrayDeque<Trace> slowJoins = new ArrayDeque<Trace>();
+
+    /**
+     * Start a trace for a joining player. Replaces any unfinished trace for the same player.
+     */
+    public static void start(String playerUUID, String playerName) {
+        pruneExpired();
+        active.put(playerUUID, new Trace(playerName));
+    }
+
+    /**
+     * Record that a player's join reached a stage. Does nothing if the player is not being traced,
+     * or the stage was already reached.
+     */
+    public static void mark(String playerUUID, Stage stage) {
+        if (active.isEmpty()) {
+            return;
+        }
+        Trace trace = active.get(playerUUID);
+        if (trace != null) {
+            trace.mark(stage);
+        }
+    }
+
+    /**
+     * Record whether the join found the skin already cached.
+     */
+    public static void markCacheLookup(String playerUUID, boolean hit) {
+        if (active.isEmpty()) {
+            return;
+        }
+        Trace trace = active.get(playerUUID);
+        if (trace != null) {
+            trace.cacheHit = hit;
+            trace.mark(Stage.CACHE_LOOKUP);
+        }
+    }
+
+    /**
+     * Called for every spawn packet that carried a custom skin. Hot path, so it returns at once
+     * when no join is being traced.
+     */
+    public static void spawnSent(String playerUUID) {
+        if (active.isEmpty()) {
+            return;
+        }
+        Trace trace = active.remove(playerUUID);
+        if (trace != null) {
+            trace.mark(Stage.FIRST_SPAWN_SENT);
+            finish(trace, Outcome.SPAWNED);
+        }
+    }
+
+    public static void failed(String playerUUID) {
+        Trace trace = active.remove(playerUUID);
+        if (trace != null) {
+            finish(trace, Outcome.FAILED);
+        }
+    }
+
+    /**
+     * Called when a player leaves. Finishes the trace with whatever stages were reached.
+     */
+    public static void left(String playerUUID) {
+        Trace trace = active.remove(playerUUID);
+        if (trace != null && trace.isReached(Stage.PROFILE_PUBLISHED)) {
+            finish(trace, Outcome.NO_VIEWER);
+        }
+    }
+
+    private static void finish(Trace trace, Outcome outcome) {
+        trace.outcome = outcome;
+        long totalNanos = trace.getTotalNanos();
+        if (outcome == Outcome.SPAWNED) {
+            SkinMetrics.timer(SkinMetrics.Timer.JOIN_SKIN).recordNanos(totalNanos);
+        }
+
+        int threshold = ModConfig.slowJoinThresholdMillis;
+        if (threshold <= 0 || totalNanos < threshold * 1000000L) {
+            return;
+        }
+
+        PierceSkinRestorer.LOGGER.warn("Slow skin join: " + trace);
+        synchronized (slowJoins) {
+            slowJoins.addLast(trace);
+            while (slowJoins.size() > Math.max(1, ModConfig.slowJoinHistory)) {
+                slowJoins.removeFirst();
+            }
+        }
+    }
+
+    private static void pruneExpired() {
+        long now = System.nanoTime();
+        Iterator<Trace> it = active.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().startNanos > MAX_TRACE_NANOS) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Recent slow joins, newest first.
+     */
+    public static List<Trace> getSlowJoins() {
+        synchronized (slowJoins) {
+            List<Trace> result = new ArrayList<Trace>(slowJoins);
+            Collections.reverse(result);
+            return result;
+        }
+    }
+
+    public static int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * One player's join timeline. Stage times are nanoseconds since login, or -1 if not reached.
+     */
+    public static final class Trace {
+        private final String playerName;
+        private final long startNanos = System.nanoTime();
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+        private volatile boolean cacheHit;
+        private volatile Outcome outcome;
+
+        Trace(String playerName) {
+            this.playerName = playerName;
+            for (int i = 0; i < stageNanos.length(); i++) {
+                stageNanos.set(i, -1);
+            }
+            stageNanos.set(Stage.LOGIN.ordinal(), 0);
+        }
+
+        void mark(Stage stage) {
+            stageNanos.compareAndSet(stage.ordinal(), -1, System.nanoTime() - startNanos);
+        }
+
+        boolean isReached(Stage stage) {
+            return stageNanos.get(stage.ordinal()) >= 0;
+        }
+
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public boolean isCacheHit() {
+            return cacheHit;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Milliseconds from login to a stage, or -1 if it was not reached.
+         */
+        public long getStageMillis(Stage stage) {
+            long nanos = stageNanos.get(stage.ordinal());
+            return nanos < 0 ? -1 : nanos / 1000000L;
+        }
+
+        /**
+         * Nanoseconds from login to the last stage reached.
+         */
+        public long getTotalNanos() {
+            long total = 0;
+            for (int i = 0; i < stageNanos.length(); i++) {
+                total = Math.max(total, stageNanos.get(i));
+            }
+            return total;
+        }
+
+        /**
+         * Stages reached, each with the time spent since the previous one,
+         * e.g. "cache lookup +0ms, queued +35ms, uuid +1210ms".
+         */
+        public String getBreakdown() {
+            StringBuilder sb = new StringBuilder();
+            long previous = 0;
+            for (Stage stage : Stage.values()) {
+                long nanos = stageNanos.get(stage.ordinal());
+                if (stage == Stage.LOGIN || nanos < 0) {
+                    continue;
+                }
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(stage.label).append(" +").append(Math.max(0, nanos - previous) / 1000000L).append("ms");
+                previous = Math.max(previous, nanos);
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return playerName + " " + getTotalNanos() / 1000000L + "ms"
+                + " (" + (cacheHit ? "cache hit" : "cache miss")
+                + (outcome == Outcome.SPAWNED ? "" : ", " + outcome.name().toLowerCase().replace('_', ' ')) + "): "
+                + getBreakdown();
+        }
+    }
+}
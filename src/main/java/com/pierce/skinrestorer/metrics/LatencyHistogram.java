@@ -0,0 +1,109 @@
+package com.pierce.skinrestorer.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets.
+ * Recording is a couple of striped adds, so it is cheap enough for packet paths.
+ * Percentiles are approximate: they report the upper bound of the matching bucket.
+ */
+public class LatencyHistogram {
+
+    // Bucket i holds samples below 2^i microseconds; the last bucket is unbounded (~35 minutes and up)
+    private static final int BUCKETS = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private volatile long maxNanos = 0;
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        long micros = nanos / 1000L;
+        int bucket = micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        if (nanos > maxNanos) {
+            maxNanos = nanos; // Racy by design - an occasional lost max is fine for monitoring
+        }
+    }
+
+    /**
+     * Record the time since a System.nanoTime() start value.
+     */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / (double) n / 1000000.0;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1000000.0;
+    }
+
+    /**
+     * Approximate percentile in milliseconds.
+     *
+     * @param percentile Between 0 and 100
+     */
+    public double getPercentileMillis(double percentile) {
+        return getPercentileMillis(percentile, this);
+    }
+
+    /**
+     * Approximate percentile in milliseconds over the samples of several histograms together.
+     *
+     * @param percentile Between 0 and 100
+     */
+    public static double getPercentileMillis(double percentile, LatencyHistogram... histograms) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        double max = 0;
+        for (LatencyHistogram histogram : histograms) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = histogram.buckets[i].sum();
+                counts[i] += n;
+                total += n;
+            }
+            max = Math.max(max, histogram.getMaxMillis());
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min((1L << i) / 1000.0, max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos = 0;
+    }
+}
@@ -0,0 +1,62 @@
+package com.pierce.skinrestorer.metrics;
+
+/**
+ * Latency histogram covering only the last one to two windows, for decisions that should
+ * follow current conditions (hedge delays, timeouts) rather than the whole uptime.
+ *
+ * Samples go into the current window; when it ends it becomes the previous window and
+ * the one before is dropped. Percentiles are taken over both windows together.
+ */
+public class RollingLatencyHistogram {
+
+    private final long windowNanos;
+    private volatile LatencyHistogram current = new LatencyHistogram();
+    private volatile LatencyHistogram previous = new LatencyHistogram();
+    private volatile long windowStart = System.nanoTime();
+
+    public RollingLatencyHistogram(long windowMillis) {
+        this.windowNanos = windowMillis * 1000000L;
+    }
+
+    public void recordNanos(long nanos) {
+        rotateIfDue();
+        current.recordNanos(nanos);
+    }
+
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Samples in the last one to two windows.
+     */
+    public long getCount() {
+        rotateIfDue();
+        return previous.getCount() + current.getCount();
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     */
+    public double getPercentileMillis(double percentile) {
+        rotateIfDue();
+        return LatencyHistogram.getPercentileMillis(percentile, previous, current);
+    }
+
+    private void rotateIfDue() {
+        long now = System.nanoTime();
+        if (now - windowStart < windowNanos) {
+            return;
+        }
+        synchronized (this) {
+            long elapsed = now - windowStart;
+            if (elapsed < windowNanos) {
+                return;
+            }
+            // After a quiet spell longer than a window, the old samples say nothing about now
+            previous = elapsed < 2 * windowNanos ? current : new LatencyHistogram();
+            current = new LatencyHistogram();
+            windowStart = now;
+        }
+    }
+}
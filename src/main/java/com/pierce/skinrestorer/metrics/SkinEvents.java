@@ -0,0 +1,129 @@
+package com.pierce.skinrestorer.metrics;
+
+import com.pierce.skinrestorer.PierceSkinRestorer;
+
+/**
+ * Java Flight Recorder events for the mod's slow paths.
+ *
+ * Callers begin an event before the work and end it afterwards. When JFR is not available
+ * (older Java 8 builds), or is turned off with -Dpierceskinrestorer.jfr=false, every call
+ * returns a shared no-op, so instrumented code costs nothing extra.
+ */
+public final class SkinEvents {
+
+    /** One Mojang HTTP request. */
+    public interface HttpCall {
+        /** @param status HTTP status, or -1 if no response was received */
+        void end(int status);
+    }
+
+    /** One skins.json load or save. */
+    public interface StorageIo {
+        void end(long bytes, int entries, boolean success);
+    }
+
+    /** One spawn packet passing through a viewer's channel handler. */
+    public interface SpawnRewrite {
+        void end(String player, boolean rewritten);
+    }
+
+    /** One refreshPlayerSkin(s) pass. */
+    public interface Refresh {
+        void end(int targets, int viewers, int spawnPackets);
+    }
+
+    interface Provider {
+        HttpCall beginHttpCall(String endpoint, String url);
+
+        StorageIo beginStorage(String operation);
+
+        SpawnRewrite beginSpawnRewrite();
+
+        Refresh beginRefresh();
+    }
+
+    private static final Provider NOOP = new Provider() {
+        private final HttpCall http = new HttpCall() {
+            @Override
+            public void end(int status) {
+            }
+        };
+        private final StorageIo storage = new StorageIo() {
+            @Override
+            public void end(long bytes, int entries, boolean success) {
+            }
+        };
+        private final SpawnRewrite spawn = new SpawnRewrite() {
+            @Override
+            public void end(String player, boolean rewritten) {
+            }
+        };
+        private final Refresh refresh = new Refresh() {
+            @Override
+            public void end(int targets, int viewers, int spawnPackets) {
+            }
+        };
+
+        @Override
+        public HttpCall beginHttpCall(String endpoint, String url) {
+            return http;
+        }
+
+        @Override
+        public StorageIo beginStorage(String operation) {
+            return storage;
+        }
+
+        @Override
+        public SpawnRewrite beginSpawnRewrite() {
+            return spawn;
+        }
+
+        @Override
+        public Refresh beginRefresh() {
+            return refresh;
+        }
+    };
+
+    private static final Provider PROVIDER = loadProvider();
+
+    private SkinEvents() {
+    }
+
+    private static Provider loadProvider() {
+        if ("false".equalsIgnoreCase(System.getProperty("pierceskinrestorer.jfr"))) {
+            return NOOP;
+        }
+        try {
+            // Loaded by name so the jdk.jfr classes are never touched on JVMs without them
+            Class.forName("jdk.jfr.FlightRecorder");
+            return (Provider) Class.forName("com.pierce.skinrestorer.metrics.JfrSkinEvents").newInstance();
+        } catch (Throwable t) {
+            PierceSkinRestorer.LOGGER.debug("Flight Recorder events disabled: " + t);
+            return NOOP;
+        }
+    }
+
+    /**
+     * Whether events are going to Flight Recorder rather than the no-op.
+     */
+    public static boolean isJfrEnabled() {
+        return PROVIDER != NOOP;
+    }
+
+    public static HttpCall beginHttpCall(String endpoint, String url) {
+        return PROVIDER.beginHttpCall(endpoint, url);
+    }
+
+    public static StorageIo beginStorage(String operation) {
+        return PROVIDER.beginStorage(operation);
+    }
+
+    public static SpawnRewrite beginSpawnRewrite() {
+        return PROVIDER.beginSpawnRewrite();
+    }
+
+    public static Refresh beginRefresh() {
+        return PROVIDER.beginRefresh();
+    }
+}
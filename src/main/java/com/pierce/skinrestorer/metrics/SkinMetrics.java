@@ -0,0 +1,215 @@
+package com.pierce.skinrestorer.metrics;
+
+import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.skin.SkinFetchPipeline;
+import com.pierce.skinrestorer.skin.SkinFetcher;
+import com.pierce.skinrestorer.skin.SkinJobScheduler;
+import com.pierce.skinrestorer.skin.SkinManager;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime counters and latency histograms for the mod.
+ * Everything is backed by striped LongAdders so recording never contends between threads.
+ * Exposed through /skin stats and as a JMX MBean.
+ */
+public class SkinMetrics {
+
+    public enum Counter {
+        UUID_LOOKUP_FAILURES,
+        PROFILE_FETCH_FAILURES,
+        REFRESH_DESTROY_PACKETS,
+        REFRESH_SPAWN_PACKETS,
+        SPAWN_PACKETS_REWRITTEN,
+        HEDGED_REQUESTS,        // Requests also sent to a second upstream because the first was slow
+        UNCHANGED_REFRESHES_SKIPPED // Re-fetched skins that looked the same, so viewers were not refreshed
+    }
+
+    public enum Timer {
+        UUID_LOOKUP,
+        BULK_UUID_LOOKUP,
+        PROFILE_FETCH,
+        STORAGE_SAVE,
+        SPAWN_REWRITE,
+        JOIN_SKIN       // Login to first spawn packet carrying the player's skin
+    }
+
+    public enum Cache {
+        SKIN_DATA,  // Player UUID -> fetched skin, checked on join
+        PROFILE,    // Player UUID -> modified profile, checked per spawn packet
+        SHARED,     // Skin name -> texture in the cross-server cache directory
+        UUID,       // Skin name -> Mojang UUID, checked before the name lookup
+        OWN_SKIN    // Login name -> fetched skin, checked on join when autoRestoreOwnSkin is on
+    }
+
+    private static final Map<Counter, LongAdder> counters = new EnumMap<Counter, LongAdder>(Counter.class);
+    private static final Map<Timer, LatencyHistogram> timers = new EnumMap<Timer, LatencyHistogram>(Timer.class);
+    private static final Map<Cache, LongAdder[]> caches = new EnumMap<Cache, LongAdder[]>(Cache.class);
+
+    private static volatile long lastSaveBytes = 0;
+    private static volatile long lastSaveEntries = 0;
+
+    private static final String MBEAN_NAME = "com.pierce.skinrestorer:type=SkinMetrics";
+    private static ObjectName registeredName;
+
+    static {
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+        for (Timer timer : Timer.values()) {
+            timers.put(timer, new LatencyHistogram());
+        }
+        for (Cache cache : Cache.values()) {
+            caches.put(cache, new LongAdder[] {new LongAdder(), new LongAdder()});
+        }
+    }
+
+    public static void increment(Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    public static void add(Counter counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+
+    public static long get(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    public static LatencyHistogram timer(Timer timer) {
+        return timers.get(timer);
+    }
+
+    public static void cacheHit(Cache cache) {
+        caches.get(cache)[0].increment();
+    }
+
+    public static void cacheMiss(Cache cache) {
+        caches.get(cache)[1].increment();
+    }
+
+    public static long getCacheHits(Cache cache) {
+        return caches.get(cache)[0].sum();
+    }
+
+    public static long getCacheMisses(Cache cache) {
+        return caches.get(cache)[1].sum();
+    }
+
+    public static void recordStorageSave(long startNanos, long bytes, long entries) {
+        timers.get(Timer.STORAGE_SAVE).recordSince(startNanos);
+        lastSaveBytes = bytes;
+        lastSaveEntries = entries;
+    }
+
+    public static long getLastSaveBytes() {
+        return lastSaveBytes;
+    }
+
+    public static long getLastSaveEntries() {
+        return lastSaveEntries;
+    }
+
+    /**
+     * All metrics as a flat name -> number map, in a stable order.
+     * Used by the MBean; names are camel-cased for JMX tooling.
+     */
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<String, Number>();
+
+        for (Counter counter : Counter.values()) {
+            values.put(attributeName(counter.name()), get(counter));
+        }
+
+        for (Timer timer : Timer.values()) {
+            LatencyHistogram histogram = timers.get(timer);
+            String prefix = attributeName(timer.name());
+            values.put(prefix + "Count", histogram.getCount());
+            values.put(prefix + "MeanMillis", histogram.getMeanMillis());
+            values.put(prefix + "P50Millis", histogram.getPercentileMillis(50));
+            values.put(prefix + "P99Millis", histogram.getPercentileMillis(99));
+            values.put(prefix + "MaxMillis", histogram.getMaxMillis());
+        }
+
+        for (Cache cache : Cache.values()) {
+            String prefix = attributeName(cache.name()) + "Cache";
+            values.put(prefix + "Hits", getCacheHits(cache));
+            values.put(prefix + "Misses", getCacheMisses(cache));
+        }
+
+        values.put("storageLastSaveBytes", lastSaveBytes);
+        values.put("storageLastSaveEntries", lastSaveEntries);
+
+        SkinJobScheduler scheduler = SkinManager.getScheduler();
+        for (SkinJobScheduler.JobClass jobClass : SkinJobScheduler.JobClass.values()) {
+            String prefix = "queue" + capitalize(jobClass.name());
+            values.put(prefix + "Depth", scheduler == null ? 0 : scheduler.getQueueDepth(jobClass));
+            values.put(prefix + "AvgWaitMillis", scheduler == null ? 0.0 : scheduler.getAverageWaitMillis(jobClass));
+        }
+        SkinJobScheduler resolveStage = SkinFetchPipeline.getResolveStage();
+        SkinJobScheduler textureStage = SkinFetchPipeline.getTextureStage();
+        for (SkinFetcher.Endpoint endpoint : SkinFetcher.Endpoint.values()) {
+            String name = attributeName(endpoint.name());
+            values.put("timeout" + Character.toUpperCase(name.charAt(0)) + name.substring(1) + "Millis",
+                SkinFetcher.getTimeoutMillis(endpoint));
+        }
+        values.put("resolveStageDepth", resolveStage == null ? 0 : resolveStage.getTotalQueueDepth());
+        values.put("textureStageDepth", textureStage == null ? 0 : textureStage.getTotalQueueDepth());
+
+        return values;
+    }
+
+    /**
+     * Convert an enum name like PROFILE_FETCH to profileFetch.
+     */
+    private static String attributeName(String enumName) {
+        String[] parts = enumName.toLowerCase(Locale.ROOT).split("_");
+        StringBuilder sb = new StringBuilder(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            sb.append(capitalize(parts[i]));
+        }
+        return sb.toString();
+    }
+
+    private static String capitalize(String s) {
+        String lower = s.toLowerCase(Locale.ROOT);
+        return Character.toUpperCase(lower.charAt(0)) + lower.substring(1);
+    }
+
+    /**
+     * Register the metrics MBean with the platform MBean server.
+     */
+    public static synchronized void registerMBean() {
+        if (registeredName != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new SkinMetricsMBean(), name);
+            }
+            registeredName = name;
+            PierceSkinRestorer.LOGGER.info("Registered JMX MBean " + MBEAN_NAME);
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.warn("Failed to register metrics MBean", e);
+        }
+    }
+
+    public static synchronized void unregisterMBean() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.debug("Failed to unregister metrics MBean: " + e.getMessage());
+        }
+        registeredName = null;
+    }
+}
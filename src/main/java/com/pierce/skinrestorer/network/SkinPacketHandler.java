@@ -2,18 +2,28 @@ package com.pierce.skinrestorer.network;
 
 import com.mojang.authlib.GameProfile;
 import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.config.ModConfig;
+import com.pierce.skinrestorer.metrics.SkinEvents;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
+import com.pierce.skinrestorer.skin.PlayerSession;
+import com.pierce.skinrestorer.skin.PlayerSessions;
 import com.pierce.skinrestorer.skin.SkinManager;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.NetworkManager;
 import net.minecraft.network.Packet;
 import net.minecraft.network.play.server.S0CPacketSpawnPlayer;
+import net.minecraft.network.play.server.S13PacketDestroyEntities;
 import net.minecraft.server.MinecraftServer;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -128,55 +138,82 @@ public class SkinPacketHandler {
         }
 
         try {
-            Channel channel = getChannel(player);
+            // The channel is looked up by reflection once per session and kept there
+            PlayerSession session = PlayerSessions.open(player);
+            Channel channel = session.getChannel();
             if (channel == null) {
-                return;
+                channel = getChannel(player);
             }
-
-            // Remove old handler if exists
-            try {
-                if (channel.pipeline().get("pierceskin_handler") != null) {
-                    channel.pipeline().remove("pierceskin_handler");
-                }
-            } catch (NoSuchElementException ignored) {
+            if (channel == null) {
+                return;
             }
-
-            // Add our handler before the packet_handler
-            channel.pipeline().addBefore("packet_handler", "pierceskin_handler",
-                new SkinChannelHandler(player));
-
-            PierceSkinRestorer.LOGGER.debug("Injected skin handler for " + player.getCommandSenderName());
+            injectChannel(session, channel);
 
         } catch (Exception e) {
             PierceSkinRestorer.LOGGER.error("Failed to inject channel handler for " + player.getCommandSenderName(), e);
         }
     }
 
+    /**
+     * Add our handler to a session's channel, before the packet_handler, replacing any old one.
+     * injectPlayer uses this for real players; harnesses call it with an EmbeddedChannel.
+     */
+    public static void injectChannel(PlayerSession session, Channel channel) {
+        // Remove old handler if exists
+        try {
+            if (channel.pipeline().get("pierceskin_handler") != null) {
+                channel.pipeline().remove("pierceskin_handler");
+            }
+        } catch (NoSuchElementException ignored) {
+        }
+
+        SkinChannelHandler handler = new SkinChannelHandler(session.getPlayer());
+        channel.pipeline().addBefore("packet_handler", "pierceskin_handler", handler);
+        session.setChannel(channel, handler);
+
+        PierceSkinRestorer.LOGGER.debug("Injected skin handler for " + session.getName());
+    }
+
     /**
      * Remove our channel handler when a player disconnects.
      */
     public static void removePlayer(EntityPlayerMP player) {
-        if (player == null || player.playerNetServerHandler == null) {
-            return; // Player not fully connected
+        if (player == null) {
+            return;
+        }
+        PlayerSession session = PlayerSessions.get(player);
+        if (session == null || session.getPlayer() != player) {
+            return; // Never injected, or the player already reconnected with a new session
+        }
+        removeChannel(session);
+    }
+
+    /**
+     * Take our handler out of a session's channel, if it was injected.
+     */
+    public static void removeChannel(PlayerSession session) {
+        Channel channel = session.getChannel();
+        ChannelHandler handler = session.getHandler();
+        if (channel == null || handler == null) {
+            return;
         }
         try {
-            Channel channel = getChannel(player);
-            if (channel != null && channel.pipeline().get("pierceskin_handler") != null) {
-                channel.pipeline().remove("pierceskin_handler");
-            }
+            channel.pipeline().remove(handler);
         } catch (Exception e) {
             // Ignore - player already disconnected
         }
+        session.setChannel(null, null);
     }
 
     /**
      * Channel handler that intercepts outgoing packets.
+     * Package-private so the benchmarks can drive it on an EmbeddedChannel.
      */
-    private static class SkinChannelHandler extends ChannelDuplexHandler {
+    static class SkinChannelHandler extends ChannelDuplexHandler {
 
         private final EntityPlayerMP viewer;
 
-        public SkinChannelHandler(EntityPlayerMP viewer) {
+        SkinChannelHandler(EntityPlayerMP viewer) {
             this.viewer = viewer;
         }
 
@@ -204,23 +241,32 @@ public class SkinPacketHandler {
                 return packet;
             }
 
+            long start = System.nanoTime();
+            SkinEvents.SpawnRewrite event = SkinEvents.beginSpawnRewrite();
+            String playerName = null;
+            boolean rewritten = false;
             try {
                 GameProfile originalProfile = (GameProfile) spawnPlayerProfileField.get(packet);
                 if (originalProfile == null) {
                     return packet;
                 }
+                playerName = originalProfile.getName();
 
                 // Get modified profile with skin data
-                GameProfile modifiedProfile = SkinManager.getModifiedProfile(originalProfile);
+                GameProfile modifiedProfile = SkinManager.getSpawnProfile(originalProfile);
 
                 if (modifiedProfile != null && modifiedProfile != originalProfile) {
                     spawnPlayerProfileField.set(packet, modifiedProfile);
-                    PierceSkinRestorer.LOGGER.debug("Injected skin into spawn packet for " + originalProfile.getName());
+                    rewritten = true;
+                    SkinMetrics.increment(SkinMetrics.Counter.SPAWN_PACKETS_REWRITTEN);
+                    PierceSkinRestorer.LOGGER.debug("Injected skin into spawn packet for " + playerName);
                 }
 
             } catch (Exception e) {
                 PierceSkinRestorer.LOGGER.debug("Error processing spawn packet: " + e.getMessage());
             }
+            SkinMetrics.timer(SkinMetrics.Timer.SPAWN_REWRITE).recordSince(start);
+            event.end(playerName, rewritten);
             return packet;
         }
     }
@@ -230,46 +276,80 @@ public class SkinPacketHandler {
      * This respawns the player entity for other clients.
      */
     public static void refreshPlayerSkin(final EntityPlayerMP targetPlayer) {
-        if (targetPlayer == null || targetPlayer.playerNetServerHandler == null) {
-            return; // Player disconnected
-        }
+        refreshPlayerSkins(Collections.singletonList(targetPlayer));
+    }
 
+    /**
+     * Force refresh several players' skins in a single pass over the online players.
+     * Each viewer gets one destroy packet covering every visible target, followed by their spawn packets.
+     */
+    public static void refreshPlayerSkins(Collection<EntityPlayerMP> targetPlayers) {
         MinecraftServer server = MinecraftServer.getServer();
         if (server == null) {
             return;
         }
 
-        // Get all online players - copy to avoid ConcurrentModificationException
-        List<?> playerList;
-        synchronized (server.getConfigurationManager().playerEntityList) {
-            playerList = new java.util.ArrayList<Object>(server.getConfigurationManager().playerEntityList);
+        List<EntityPlayerMP> targets = new ArrayList<EntityPlayerMP>(targetPlayers.size());
+        for (EntityPlayerMP target : targetPlayers) {
+            if (target != null && target.playerNetServerHandler != null) {
+                targets.add(target); // Skip disconnected players
+            }
+        }
+        if (targets.isEmpty()) {
+            return;
         }
 
-        for (Object obj : playerList) {
-            EntityPlayerMP viewer = (EntityPlayerMP) obj;
+        SkinEvents.Refresh event = SkinEvents.beginRefresh();
+        int viewers = 0;
+        int spawnPackets = 0;
 
-            if (viewer == targetPlayer) {
-                continue; // Skip the target player themselves
+        int viewDistance = ModConfig.refreshViewDistance;
+        List<EntityPlayerMP> visible = new ArrayList<EntityPlayerMP>(targets.size());
+        for (PlayerSession session : PlayerSessions.all()) {
+            EntityPlayerMP viewer = session.getPlayer();
+            if (viewer == null || viewer.playerNetServerHandler == null) {
+                continue;
             }
 
-            // Check if the viewer can see the target (same world, within distance)
-            if (viewer.worldObj == targetPlayer.worldObj) {
-                double distance = viewer.getDistanceToEntity(targetPlayer);
-                if (distance < 256) { // Within render distance
-                    // Remove and re-add the player entity for this viewer
-                    // This triggers a new spawn packet which our handler will intercept
-                    viewer.playerNetServerHandler.sendPacket(
-                        new net.minecraft.network.play.server.S13PacketDestroyEntities(targetPlayer.getEntityId())
-                    );
-
-                    // Send spawn packet - our handler will inject the skin
-                    viewer.playerNetServerHandler.sendPacket(
-                        new S0CPacketSpawnPlayer(targetPlayer)
-                    );
+            visible.clear();
+            for (EntityPlayerMP target : targets) {
+                if (viewer == target) {
+                    continue; // Skip the target player themselves
+                }
+
+                // Check if the viewer can see the target (same world, within distance)
+                if (viewer.worldObj == target.worldObj && viewer.getDistanceToEntity(target) < viewDistance) {
+                    visible.add(target);
                 }
             }
+            if (visible.isEmpty()) {
+                continue;
+            }
+
+            // Remove and re-add the player entities for this viewer
+            // This triggers new spawn packets which our handler will intercept
+            int[] entityIds = new int[visible.size()];
+            for (int i = 0; i < entityIds.length; i++) {
+                entityIds[i] = visible.get(i).getEntityId();
+            }
+            viewer.playerNetServerHandler.sendPacket(new S13PacketDestroyEntities(entityIds));
+
+            // Send spawn packets - our handler will inject the skins
+            for (EntityPlayerMP target : visible) {
+                viewer.playerNetServerHandler.sendPacket(new S0CPacketSpawnPlayer(target));
+            }
+
+            SkinMetrics.increment(SkinMetrics.Counter.REFRESH_DESTROY_PACKETS);
+            SkinMetrics.add(SkinMetrics.Counter.REFRESH_SPAWN_PACKETS, visible.size());
+            viewers++;
+            spawnPackets += visible.size();
         }
+        event.end(targets.size(), viewers, spawnPackets);
 
-        PierceSkinRestorer.LOGGER.info("Refreshed skin display for " + targetPlayer.getCommandSenderName());
+        if (targets.size() == 1) {
+            PierceSkinRestorer.LOGGER.info("Refreshed skin display for " + targets.get(0).getCommandSenderName());
+        } else {
+            PierceSkinRestorer.LOGGER.info("Refreshed skin display for " + targets.size() + " players");
+        }
     }
 }
@@ -0,0 +1,169 @@
+package com.pierce.skinrestorer.skin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Sorted, case-insensitive set of names for tab completion.
+ *
+ * Lookups binary-search an immutable array, so completing a prefix costs O(log n) plus
+ * the matches and allocates nothing but the caller's result list. Changes copy the array;
+ * they happen on login, logout and skin changes, far less often than lookups.
+ */
+public class NameIndex {
+
+    // Lower-case names in sorted order, and the names as first added, in the same order
+    private static final class Entries {
+        final String[] keys;
+        final String[] names;
+
+        Entries(String[] keys, String[] names) {
+            this.keys = keys;
+            this.names = names;
+        }
+    }
+
+    private static final Entries EMPTY = new Entries(new String[0], new String[0]);
+
+    private volatile Entries entries = EMPTY;
+
+    public NameIndex() {
+    }
+
+    public NameIndex(Collection<String> names) {
+        replaceAll(names);
+    }
+
+    /**
+     * Add a name. Does nothing if the index already holds it in any case.
+     */
+    public synchronized void add(String name) {
+        Entries current = entries;
+        String key = name.toLowerCase();
+        int index = Arrays.binarySearch(current.keys, key);
+        if (index >= 0) {
+            return;
+        }
+        int insert = -index - 1;
+        entries = new Entries(insertAt(current.keys, insert, key), insertAt(current.names, insert, name));
+    }
+
+    /**
+     * Add many names with a single copy.
+     */
+    public synchronized void addAll(Collection<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+        List<String> merged = new ArrayList<String>(Arrays.asList(entries.names));
+        merged.addAll(names);
+        entries = build(merged);
+    }
+
+    /**
+     * Replace every name in the index.
+     */
+    public synchronized void replaceAll(Collection<String> names) {
+        entries = build(names);
+    }
+
+    public synchronized void remove(String name) {
+        Entries current = entries;
+        int index = Arrays.binarySearch(current.keys, name.toLowerCase());
+        if (index >= 0) {
+            entries = new Entries(removeAt(current.keys, index), removeAt(current.names, index));
+        }
+    }
+
+    public boolean contains(String name) {
+        return Arrays.binarySearch(entries.keys, name.toLowerCase()) >= 0;
+    }
+
+    public int size() {
+        return entries.keys.length;
+    }
+
+    /**
+     * Append every name starting with a prefix (ignoring case) to a list, in alphabetical order.
+     */
+    public void collect(String prefix, List<String> out) {
+        collect(prefix, out, null);
+    }
+
+    /**
+     * Like {@link #collect(String, List)}, skipping names held by another index.
+     */
+    public void collect(String prefix, List<String> out, NameIndex exclude) {
+        Entries current = entries;
+        String[] keys = current.keys;
+        for (int i = lowerBound(keys, prefix); i < keys.length && hasPrefix(keys[i], prefix); i++) {
+            if (exclude == null || !exclude.contains(keys[i])) {
+                out.add(current.names[i]);
+            }
+        }
+    }
+
+    private static Entries build(Collection<String> names) {
+        // First spelling added wins for names differing only in case
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        for (String name : names) {
+            String key = name.toLowerCase();
+            if (!sorted.containsKey(key)) {
+                sorted.put(key, name);
+            }
+        }
+        return new Entries(sorted.keySet().toArray(new String[sorted.size()]),
+            sorted.values().toArray(new String[sorted.size()]));
+    }
+
+    /**
+     * First position whose key is not less than the prefix. Keys are lower-case; the prefix may not be.
+     */
+    private static int lowerBound(String[] keys, String prefix) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareToPrefix(keys[mid], prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int compareToPrefix(String key, String prefix) {
+        int length = Math.min(key.length(), prefix.length());
+        for (int i = 0; i < length; i++) {
+            char a = key.charAt(i);
+            char b = Character.toLowerCase(prefix.charAt(i));
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return key.length() - prefix.length();
+    }
+
+    private static boolean hasPrefix(String key, String prefix) {
+        return key.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    private static String[] insertAt(String[] array, int index, String value) {
+        String[] copy = new String[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        copy[index] = value;
+        System.arraycopy(array, index, copy, index + 1, array.length - index);
+        return copy;
+    }
+
+    private static String[] removeAt(String[] array, int index) {
+        String[] copy = new String[array.length - 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 1, copy, index, array.length - index - 1);
+        return copy;
+    }
+}
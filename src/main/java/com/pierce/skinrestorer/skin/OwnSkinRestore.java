@@ -0,0 +1,268 @@
+package com.pierce.skinrestorer.skin;
+
+import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.config.ModConfig;
+import com.pierce.skinrestorer.metrics.JoinTracer;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives players with no stored skin the Mojang skin of their own login name (autoRestoreOwnSkin).
+ *
+ * Joining players are collected for autoRestoreWindowMillis, then the whole window is resolved
+ * at once: names without a cached UUID go to Mojang in groups of up to 10 per request, and each
+ * resolved name's textures are fetched concurrently on the texture stage. All of it runs as LOGIN
+ * work. Players joining with a name that is already being fetched wait for that fetch.
+ *
+ * Fetched skins are kept by name, and names Mojang does not know are remembered for
+ * uuidCacheTtlMinutes, so a repeat join costs no request either way. Nothing is written to
+ * skins.json: a player who sets a skin keeps it, and one who clears it gets their own back
+ * on their next join.
+ */
+public class OwnSkinRestore {
+
+    // Lower-case login name -> players waiting for its lookup. Guarded by itself.
+    private static final Map<String, List<PlayerSession>> lookups = new HashMap<String, List<PlayerSession>>();
+
+    // Names collected since the last flush, in join order. Guarded by lookups.
+    private static List<String> window = new ArrayList<String>();
+    private static long windowStartedAt;
+
+    // Lower-case login name -> fetched skin
+    private static final Map<String, CachedSkin> skins = new ConcurrentHashMap<String, CachedSkin>();
+
+    // Lower-case login name -> when Mojang said it has no account
+    private static final Map<String, Long> unknownNames = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Give a joining player without a stored skin the skin of their own name, from the cache
+     * or with the next batch. May be called from a Netty thread.
+     */
+    static void request(PlayerSession session) {
+        String name = session.getName().toLowerCase();
+        long now = System.currentTimeMillis();
+
+        Long unknownSince = unknownNames.get(name);
+        if (unknownSince != null) {
+            if (now - unknownSince <= ModConfig.uuidCacheTtlMinutes * 60000L) {
+                return; // No Mojang account - keeps the default skin
+            }
+            unknownNames.remove(name, unknownSince);
+        }
+
+        JoinTracer.start(session.getUUID(), session.getName());
+        CachedSkin cached = skins.get(name);
+        JoinTracer.markCacheLookup(session.getUUID(), cached != null);
+        if (cached != null) {
+            SkinMetrics.cacheHit(SkinMetrics.Cache.OWN_SKIN);
+            cached.lastUsed = now;
+            SkinManager.publishOwnSkin(session, cached.snapshot);
+            if (!isExpired(cached.snapshot, now)) {
+                return;
+            }
+            // Expired - keep showing it and fetch a fresh copy with the next batch
+        } else {
+            SkinMetrics.cacheMiss(SkinMetrics.Cache.OWN_SKIN);
+        }
+
+        synchronized (lookups) {
+            List<PlayerSession> waiting = lookups.get(name);
+            if (waiting == null) {
+                waiting = new ArrayList<PlayerSession>(1);
+                lookups.put(name, waiting);
+                if (window.isEmpty()) {
+                    windowStartedAt = now;
+                }
+                window.add(name);
+            }
+            waiting.add(session);
+        }
+    }
+
+    /**
+     * Send the names collected in the current window off for lookup once autoRestoreWindowMillis
+     * has passed. Server thread only; called every tick. Only queues work, so it never blocks.
+     */
+    public static void tick() {
+        List<String> names;
+        synchronized (lookups) {
+            if (window.isEmpty() || System.currentTimeMillis() - windowStartedAt < ModConfig.autoRestoreWindowMillis) {
+                return;
+            }
+            names = window;
+            window = new ArrayList<String>();
+        }
+
+        List<String> unresolved = new ArrayList<String>();
+        for (String name : names) {
+            String uuid = SkinFetchPipeline.getCachedUuid(name);
+            if (uuid != null) {
+                submitTexture(name, uuid);
+            } else {
+                unresolved.add(name);
+            }
+        }
+
+        for (int i = 0; i < unresolved.size(); i += SkinFetcher.BULK_UUID_LIMIT) {
+            final List<String> group = new ArrayList<String>(
+                unresolved.subList(i, Math.min(unresolved.size(), i + SkinFetcher.BULK_UUID_LIMIT)));
+            boolean submitted = SkinFetchPipeline.submitResolve(SkinJobScheduler.JobClass.LOGIN,
+                "own skins (" + group.size() + ")", new Runnable() {
+                    @Override
+                    public void run() {
+                        resolve(group);
+                    }
+                });
+            if (!submitted) {
+                for (String name : group) {
+                    complete(name, null);
+                }
+            }
+        }
+    }
+
+    private static void resolve(List<String> names) {
+        List<String> remaining = new ArrayList<String>(names.size());
+        for (String name : names) {
+            // Another server sharing the cache directory may already have fetched it
+            SharedSkinCache.Record shared = SharedSkinCache.get(name);
+            if (shared != null) {
+                if (shared.uuid != null) {
+                    SkinFetchPipeline.cacheUuid(name, shared.uuid, shared.fetchedAt);
+                }
+                complete(name, shared.toSnapshot());
+            } else {
+                remaining.add(name);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> uuids = SkinFetcher.getUUIDsFromUsernames(remaining);
+        if (uuids == null) {
+            // Request failed - try again when the players next join
+            for (String name : remaining) {
+                complete(name, null);
+            }
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (String name : remaining) {
+            String uuid = uuids.get(name);
+            if (uuid == null) {
+                PierceSkinRestorer.LOGGER.debug("No Mojang account named " + name + ", keeping the default skin");
+                unknownNames.put(name, now);
+                complete(name, null);
+            } else {
+                SkinFetchPipeline.cacheUuid(name, uuid, now);
+                submitTexture(name, uuid);
+            }
+        }
+    }
+
+    private static void submitTexture(final String name, final String uuid) {
+        boolean submitted = SkinFetchPipeline.submitTexture(SkinJobScheduler.JobClass.LOGIN, "own skin " + name, new Runnable() {
+            @Override
+            public void run() {
+                SkinSnapshot snapshot = SkinSnapshot.of(SkinFetcher.fetchProfileTextures(uuid));
+                if (snapshot != null) {
+                    SharedSkinCache.put(name, uuid, snapshot);
+                }
+                complete(name, snapshot);
+            }
+        });
+        if (!submitted) {
+            complete(name, null);
+        }
+    }
+
+    /**
+     * Cache a finished lookup and publish it to everyone who was waiting for it.
+     *
+     * @param snapshot The skin, or null if there is none or it could not be fetched
+     */
+    private static void complete(String name, SkinSnapshot snapshot) {
+        List<PlayerSession> waiting;
+        synchronized (lookups) {
+            waiting = lookups.remove(name);
+        }
+        if (snapshot != null) {
+            skins.put(name, new CachedSkin(snapshot));
+        }
+        if (waiting == null) {
+            return;
+        }
+
+        for (PlayerSession session : waiting) {
+            if (snapshot == null) {
+                JoinTracer.failed(session.getUUID());
+                continue;
+            }
+            JoinTracer.mark(session.getUUID(), JoinTracer.Stage.PROFILE_FETCHED);
+            // Players who were shown an expired copy only need a refresh if the skin changed
+            if (!snapshot.sameTexture(session.getSkin())) {
+                SkinManager.publishOwnSkin(session, snapshot);
+            }
+        }
+    }
+
+    private static boolean isExpired(SkinSnapshot snapshot, long now) {
+        int ttlMinutes = ModConfig.skinCacheTtlMinutes;
+        return ttlMinutes > 0 && now - snapshot.getFetchedAt() > ttlMinutes * 60000L;
+    }
+
+    /**
+     * Drop skins of names nobody has joined with for retentionDays, in step with storage compaction.
+     *
+     * @return the number of skins dropped
+     */
+    static int evictIdle(int retentionDays) {
+        if (retentionDays <= 0) {
+            return 0; // Keep all, as storage does
+        }
+        long cutoff = System.currentTimeMillis() - retentionDays * 86400000L;
+        int evicted = 0;
+        Iterator<CachedSkin> it = skins.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().lastUsed < cutoff) {
+                it.remove();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Number of own-name skins in memory.
+     */
+    public static int getCachedSkinCount() {
+        return skins.size();
+    }
+
+    /**
+     * Forget lookups still waiting. Called when the server stops; cached skins are kept.
+     */
+    static void clear() {
+        synchronized (lookups) {
+            lookups.clear();
+            window = new ArrayList<String>();
+        }
+    }
+
+    private static final class CachedSkin {
+        final SkinSnapshot snapshot;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        CachedSkin(SkinSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+}
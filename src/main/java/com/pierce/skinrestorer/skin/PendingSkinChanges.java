@@ -0,0 +1,201 @@
+package com.pierce.skinrestorer.skin;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.pierce.skinrestorer.PierceSkinRestorer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Skin changes players asked for that have not finished yet, kept so a restart does not lose them.
+ *
+ * A change is recorded when /skin set, /skin reload or an admin set is accepted and removed once
+ * it succeeds or definitely fails. Whatever is left at shutdown, queued or stuck on a slow Mojang
+ * request, is written to skinrestorer/pending-jobs.json and run again after the next start,
+ * highest job class first. Only the newest change per player is kept.
+ */
+public class PendingSkinChanges {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Type LIST_TYPE = new TypeToken<List<Change>>() {}.getType();
+
+    // A change resumed this many times without finishing is dropped rather than retried forever
+    private static final int MAX_ATTEMPTS = 3;
+
+    public enum Kind {
+        SET,    // Fetch skinSource and store it as the player's skin
+        RELOAD  // Re-fetch the player's stored skin
+    }
+
+    /**
+     * One outstanding change. Compared by identity, so a newer change for the same player
+     * is never removed by the completion of an older one.
+     */
+    public static class Change {
+        public String playerUUID;
+        public String playerName;
+        public Kind kind;
+        public String skinSource;  // Username for SET, null for RELOAD
+        public SkinJobScheduler.JobClass jobClass;
+        public long requestedAt;
+        public int attempts;       // Times it was resumed after a restart
+    }
+
+    private static File pendingFile;
+
+    // Player UUID -> their newest outstanding change
+    private static final Map<String, Change> pending = new ConcurrentHashMap<String, Change>();
+
+    public static void init(File dataDir) {
+        pendingFile = new File(dataDir, "pending-jobs.json");
+    }
+
+    /**
+     * Record a change that was just accepted, replacing any older one for the player.
+     */
+    public static void add(String playerUUID, String playerName, Kind kind, String skinSource,
+                           SkinJobScheduler.JobClass jobClass) {
+        Change change = new Change();
+        change.playerUUID = playerUUID;
+        change.playerName = playerName;
+        change.kind = kind;
+        change.skinSource = skinSource;
+        change.jobClass = jobClass;
+        change.requestedAt = System.currentTimeMillis();
+        pending.put(playerUUID, change);
+    }
+
+    /**
+     * Forget a player's change once it succeeded or failed for good. Does nothing if the player
+     * has since asked for something else.
+     */
+    public static void complete(String playerUUID, Kind kind, String skinSource) {
+        Change change = pending.get(playerUUID);
+        if (change != null && change.kind == kind
+            && (skinSource == null ? change.skinSource == null : skinSource.equalsIgnoreCase(change.skinSource))) {
+            pending.remove(playerUUID, change);
+        }
+    }
+
+    static void complete(Change change) {
+        pending.remove(change.playerUUID, change);
+    }
+
+    /**
+     * Forget a player's change whatever it is, e.g. because they cleared their skin.
+     */
+    public static void cancel(String playerUUID) {
+        pending.remove(playerUUID);
+    }
+
+    /**
+     * False once the player asked for something newer, or the change was completed.
+     */
+    static boolean isCurrent(Change change) {
+        return pending.get(change.playerUUID) == change;
+    }
+
+    public static int size() {
+        return pending.size();
+    }
+
+    /**
+     * Write the outstanding changes to disk, or delete the file if there are none.
+     * Called at shutdown, after the drain period.
+     */
+    public static synchronized void save() {
+        if (pendingFile == null) {
+            return;
+        }
+        List<Change> changes = new ArrayList<Change>(pending.values());
+        if (changes.isEmpty()) {
+            if (pendingFile.exists() && !pendingFile.delete()) {
+                PierceSkinRestorer.LOGGER.warn("Could not delete " + pendingFile);
+            }
+            return;
+        }
+
+        try {
+            File temp = new File(pendingFile.getPath() + ".tmp");
+            FileWriter writer = new FileWriter(temp);
+            try {
+                GSON.toJson(changes, writer);
+            } finally {
+                writer.close();
+            }
+            Files.move(temp.toPath(), pendingFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            PierceSkinRestorer.LOGGER.info("Saved " + changes.size() + " unfinished skin changes for the next start");
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.error("Failed to save pending-jobs.json", e);
+        }
+    }
+
+    /**
+     * Read the changes left by the last shutdown, oldest first within each job class, highest class first.
+     * The file stays until the next save(), so a crash before they finish does not lose them.
+     */
+    static synchronized List<Change> load() {
+        List<Change> changes = new ArrayList<Change>();
+        if (pendingFile == null || !pendingFile.isFile()) {
+            return changes;
+        }
+
+        FileReader reader = null;
+        try {
+            reader = new FileReader(pendingFile);
+            List<Change> loaded = GSON.fromJson(reader, LIST_TYPE);
+            if (loaded != null) {
+                for (Change change : loaded) {
+                    if (change == null || change.playerUUID == null || change.kind == null
+                        || (change.kind == Kind.SET && change.skinSource == null)) {
+                        continue;
+                    }
+                    if (change.attempts >= MAX_ATTEMPTS) {
+                        PierceSkinRestorer.LOGGER.warn("Dropping skin change for " + change.playerName
+                            + " after " + change.attempts + " restarts without finishing");
+                        continue;
+                    }
+                    if (change.jobClass == null) {
+                        change.jobClass = SkinJobScheduler.JobClass.COMMAND;
+                    }
+                    // Keep a change made since startup over the saved one
+                    if (pending.putIfAbsent(change.playerUUID, change) == null) {
+                        changes.add(change);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.error("Failed to read pending-jobs.json", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+
+        Collections.sort(changes, new Comparator<Change>() {
+            @Override
+            public int compare(Change a, Change b) {
+                if (a.jobClass != b.jobClass) {
+                    return a.jobClass.compareTo(b.jobClass);
+                }
+                return Long.compare(a.requestedAt, b.requestedAt);
+            }
+        });
+        return changes;
+    }
+}
@@ -0,0 +1,142 @@
+package com.pierce.skinrestorer.skin;
+
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.properties.Property;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import net.minecraft.entity.player.EntityPlayerMP;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-player state for one online player, created at login and dropped at logout
+ * (see PlayerSessions). Fields are read by Netty event loops, fetch threads and the
+ * server thread, so all mutable state is volatile or atomic.
+ */
+public final class PlayerSession {
+
+    private final UUID id;
+    private final String uuid;         // id.toString(), kept so hot paths do not rebuild it
+    private final String name;
+    private final EntityPlayerMP player; // Null for sessions seeded by benchmarks and harnesses
+
+    // The player's live profile, or a bare id and name for detached sessions
+    private final GameProfile gameProfile;
+
+    // Copies of the live profile taken at login, sent while the player has no custom skin.
+    // The server thread changes the live profile's textures, so spawn packets never carry it.
+    private final GameProfile defaultProfile; // As the player logged in
+    private final GameProfile clearedProfile; // Without textures, after /skin clear
+
+    // Netty channel and our handler in its pipeline, set when the handler is injected
+    private volatile Channel channel;
+    private volatile ChannelHandler handler;
+
+    // Profile to put into spawn packets: the skinned profile, clearedProfile once the skin was
+    // cleared, or null before either (defaultProfile is sent). Copy-on-write: a new GameProfile
+    // is published for every change.
+    private volatile GameProfile profile;
+
+    // Skin currently applied to the player's live profile, null if none
+    private volatile SkinSnapshot skin;
+
+    // Last profile sent to any viewer in a spawn packet, or SPAWN_IN_PROGRESS
+    final AtomicReference<GameProfile> lastSpawned = new AtomicReference<GameProfile>();
+
+    // Set when skin resolution was started during the login handshake
+    final AtomicBoolean loginStarted = new AtomicBoolean();
+
+    PlayerSession(UUID id, String name, EntityPlayerMP player) {
+        this.id = id;
+        this.uuid = id.toString();
+        this.name = name;
+        this.player = player;
+        this.gameProfile = player != null ? player.getGameProfile() : new GameProfile(id, name);
+        this.defaultProfile = copyProfile(gameProfile, true);
+        this.clearedProfile = copyProfile(gameProfile, false);
+    }
+
+    private static GameProfile copyProfile(GameProfile original, boolean withTextures) {
+        GameProfile copy = new GameProfile(original.getId(), original.getName());
+        // Avoiding putAll() due to Guava classloader conflicts in GTNH
+        for (Map.Entry<String, Property> property : original.getProperties().entries()) {
+            if (withTextures || !property.getKey().equals("textures")) {
+                copy.getProperties().put(property.getKey(), property.getValue());
+            }
+        }
+        return copy;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getUUID() {
+        return uuid;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public EntityPlayerMP getPlayer() {
+        return player;
+    }
+
+    /**
+     * The player's own GameProfile. Only its id and name may be read off the server thread.
+     */
+    public GameProfile getGameProfile() {
+        return gameProfile;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public ChannelHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Record the player's channel and the handler injected into it.
+     */
+    public void setChannel(Channel channel, ChannelHandler handler) {
+        this.channel = channel;
+        this.handler = handler;
+    }
+
+    public GameProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Immutable copy of the player's profile as they logged in, for spawn packets
+     * while they have no custom skin.
+     */
+    public GameProfile getDefaultProfile() {
+        return defaultProfile;
+    }
+
+    /**
+     * Immutable copy of the player's profile without textures, published when they clear their skin.
+     */
+    GameProfile getClearedProfile() {
+        return clearedProfile;
+    }
+
+    void setProfile(GameProfile profile) {
+        this.profile = profile;
+    }
+
+    public SkinSnapshot getSkin() {
+        return skin;
+    }
+
+    void setSkin(SkinSnapshot skin) {
+        this.skin = skin;
+    }
+}
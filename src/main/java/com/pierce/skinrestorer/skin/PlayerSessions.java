@@ -0,0 +1,130 @@
+package com.pierce.skinrestorer.skin;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of online players' sessions, keyed by UUID, with a lower-case name lookup for commands.
+ *
+ * Lookups are a single map access, replacing reflective channel lookups and scans of the
+ * player list. A session is removed at logout, which releases everything held for the player.
+ */
+public class PlayerSessions {
+
+    private static final Map<UUID, PlayerSession> byId = new ConcurrentHashMap<UUID, PlayerSession>();
+    private static final Map<String, PlayerSession> byName = new ConcurrentHashMap<String, PlayerSession>();
+
+    // Names of online players, for tab completion
+    private static final NameIndex names = new NameIndex();
+
+    /**
+     * Get or create the session for a player who is logging in. A session left by an earlier
+     * connection of the same player is replaced.
+     */
+    public static synchronized PlayerSession open(EntityPlayerMP player) {
+        UUID id = player.getUniqueID();
+        PlayerSession existing = byId.get(id);
+        if (existing != null && existing.getPlayer() == player) {
+            return existing;
+        }
+
+        PlayerSession session = new PlayerSession(id, player.getCommandSenderName(), player);
+        byId.put(id, session);
+        byName.put(session.getName().toLowerCase(), session);
+        names.add(session.getName());
+        return session;
+    }
+
+    /**
+     * Drop a player's session at logout. Does nothing if the player has already reconnected
+     * with a new session.
+     *
+     * @return the removed session, or null
+     */
+    public static synchronized PlayerSession close(EntityPlayerMP player) {
+        PlayerSession session = byId.get(player.getUniqueID());
+        if (session == null || session.getPlayer() != player || !byId.remove(session.getId(), session)) {
+            return null;
+        }
+        if (byName.remove(session.getName().toLowerCase(), session)) {
+            names.remove(session.getName());
+        }
+        return session;
+    }
+
+    /**
+     * Register a session with no player entity, e.g. for benchmarks and harnesses that run without a server.
+     * Detached sessions are not in the name lookup.
+     */
+    static synchronized PlayerSession openDetached(UUID id, String name) {
+        PlayerSession session = byId.get(id);
+        if (session == null) {
+            session = new PlayerSession(id, name, null);
+            byId.put(id, session);
+        }
+        return session;
+    }
+
+    static synchronized void closeDetached(PlayerSession session) {
+        byId.remove(session.getId(), session);
+    }
+
+    public static PlayerSession get(UUID id) {
+        return id == null ? null : byId.get(id);
+    }
+
+    /**
+     * @param playerUUID UUID in string form
+     */
+    public static PlayerSession get(String playerUUID) {
+        try {
+            return byId.get(UUID.fromString(playerUUID));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static PlayerSession get(EntityPlayerMP player) {
+        return byId.get(player.getUniqueID());
+    }
+
+    /**
+     * The online player with this name, ignoring case, or null.
+     */
+    public static EntityPlayerMP getPlayer(String name) {
+        PlayerSession session = byName.get(name.toLowerCase());
+        return session != null ? session.getPlayer() : null;
+    }
+
+    /**
+     * Live view of every session. Iterating it is safe from any thread.
+     */
+    public static Collection<PlayerSession> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    public static int size() {
+        return byId.size();
+    }
+
+    /**
+     * Names of online players, kept up to date on login and logout.
+     */
+    public static NameIndex getNames() {
+        return names;
+    }
+
+    /**
+     * Forget every session. Called when the server stops.
+     */
+    static synchronized void clear() {
+        byId.clear();
+        byName.clear();
+        names.replaceAll(Collections.<String>emptyList());
+    }
+}
@@ -0,0 +1,36 @@
+package com.pierce.skinrestorer.skin;
+
+/**
+ * Simple token bucket for pacing requests to Mojang.
+ * Holds at most one second's worth of permits, so idle time does not turn into a burst.
+ */
+public class RateLimiter {
+
+    private final double permitsPerNano;
+    private final double maxPermits;
+    private double permits;
+    private long lastRefill = System.nanoTime();
+
+    public RateLimiter(int permitsPerMinute) {
+        this.permitsPerNano = permitsPerMinute / 60e9;
+        this.maxPermits = Math.max(1.0, permitsPerMinute / 60.0);
+        this.permits = maxPermits;
+    }
+
+    /**
+     * Take one permit if available.
+     *
+     * @return 0 if a permit was taken, otherwise nanoseconds until one should be available
+     */
+    public synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        permits = Math.min(maxPermits, permits + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+
+        if (permits >= 1.0) {
+            permits -= 1.0;
+            return 0;
+        }
+        return Math.max(1L, (long) ((1.0 - permits) / permitsPerNano));
+    }
+}
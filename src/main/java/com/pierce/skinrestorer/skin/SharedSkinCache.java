@@ -0,0 +1,196 @@
+package com.pierce.skinrestorer.skin;
+
+import com.google.gson.Gson;
+import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.config.ModConfig;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * Optional skin cache shared by several server processes on one machine.
+ *
+ * Each skin name is one small JSON record in the directory set by sharedCacheDir.
+ * Records are written to a temporary file and atomically renamed into place, so readers
+ * never see a partial record and need no lock. Writers take an exclusive lock on the
+ * directory's .lock file and only replace a record with a newer one, so two servers
+ * fetching the same skin cannot roll each other back.
+ */
+public class SharedSkinCache {
+
+    /** Bumped when the record layout changes; records with another version are ignored. */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final Gson GSON = new Gson();
+    private static final Pattern VALID_NAME = Pattern.compile("[a-z0-9_]{1,16}");
+
+    // Serialises writers within this JVM; FileLock only excludes other processes
+    private static final Object writeLock = new Object();
+
+    /**
+     * One cached skin as stored on disk.
+     */
+    public static class Record {
+        public int formatVersion;
+        public String name;        // Lower-case skin username
+        public String uuid;        // Mojang UUID without dashes
+        public String value;       // Base64 encoded texture data
+        public String signature;   // Mojang's signature
+        public long fetchedAt;     // When the texture was fetched from Mojang
+        public String writer;      // pid@host of the server that fetched it, for troubleshooting
+
+        public SkinSnapshot toSnapshot() {
+            return new SkinSnapshot(value, signature, uuid, fetchedAt);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return getDirectory() != null;
+    }
+
+    private static File getDirectory() {
+        String path = ModConfig.sharedCacheDir;
+        if (path == null || path.trim().isEmpty()) {
+            return null;
+        }
+        return new File(path.trim());
+    }
+
+    private static File recordFile(File dir, String name) {
+        return new File(dir, name + ".json");
+    }
+
+    /**
+     * Look up a skin another server (or this one) already fetched.
+     * Expired records (see skinCacheTtlMinutes) count as misses.
+     *
+     * @return the record, or null if the cache is disabled or has no fresh copy
+     */
+    public static Record get(String skinName) {
+        File dir = getDirectory();
+        String name = skinName.toLowerCase();
+        if (dir == null || !VALID_NAME.matcher(name).matches()) {
+            return null;
+        }
+
+        Record record = read(recordFile(dir, name));
+        int ttlMinutes = ModConfig.skinCacheTtlMinutes;
+        if (record == null || (ttlMinutes > 0 && System.currentTimeMillis() - record.fetchedAt > ttlMinutes * 60000L)) {
+            SkinMetrics.cacheMiss(SkinMetrics.Cache.SHARED);
+            return null;
+        }
+        SkinMetrics.cacheHit(SkinMetrics.Cache.SHARED);
+        return record;
+    }
+
+    /**
+     * Publish a freshly fetched skin to the other servers. Does nothing if the cache is disabled,
+     * or the cache already holds a copy fetched at the same time or later.
+     */
+    public static void put(String skinName, String uuid, SkinSnapshot snapshot) {
+        File dir = getDirectory();
+        String name = skinName.toLowerCase();
+        if (dir == null || snapshot == null || !VALID_NAME.matcher(name).matches()) {
+            return;
+        }
+
+        Record record = new Record();
+        record.formatVersion = FORMAT_VERSION;
+        record.name = name;
+        record.uuid = uuid;
+        record.value = snapshot.getTextureValue();
+        record.signature = snapshot.getTextureSignature();
+        record.fetchedAt = snapshot.getFetchedAt();
+        record.writer = ManagementFactory.getRuntimeMXBean().getName();
+
+        synchronized (writeLock) {
+            RandomAccessFile lockFile = null;
+            FileLock lock = null;
+            try {
+                if (!dir.exists() && !dir.mkdirs()) {
+                    PierceSkinRestorer.LOGGER.warn("Cannot create shared skin cache directory " + dir);
+                    return;
+                }
+                lockFile = new RandomAccessFile(new File(dir, ".lock"), "rw");
+                FileChannel channel = lockFile.getChannel();
+                lock = channel.lock();
+
+                File target = recordFile(dir, name);
+                Record existing = read(target);
+                if (existing != null && existing.fetchedAt >= record.fetchedAt) {
+                    return; // Someone stored the same or a newer fetch
+                }
+
+                File temp = new File(dir, name + ".json.tmp");
+                write(temp, record);
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (Exception e) {
+                PierceSkinRestorer.LOGGER.warn("Failed to write shared skin cache record for " + name + ": " + e);
+            } finally {
+                if (lock != null) {
+                    try {
+                        lock.release();
+                    } catch (IOException ignored) {
+                    }
+                }
+                if (lockFile != null) {
+                    try {
+                        lockFile.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    private static Record read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            Record record = GSON.fromJson(reader, Record.class);
+            if (record == null || record.formatVersion != FORMAT_VERSION || record.value == null) {
+                return null;
+            }
+            return record;
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.debug("Ignoring unreadable shared skin cache record " + file + ": " + e);
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    private static void write(File file, Record record) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            Writer writer = new OutputStreamWriter(out, "UTF-8");
+            GSON.toJson(record, writer);
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+}
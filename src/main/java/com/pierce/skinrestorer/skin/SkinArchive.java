@@ -0,0 +1,122 @@
+package com.pierce.skinrestorer.skin;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.pierce.skinrestorer.PierceSkinRestorer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cold storage for skin entries of players who have not been seen for a long time.
+ *
+ * Entries are spread over up to 256 shard files (skinrestorer/archive/00.json .. ff.json),
+ * chosen by the first two hex digits of the player UUID. Nothing is held in memory:
+ * restoring one player reads and rewrites only their shard.
+ */
+class SkinArchive {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Type SHARD_TYPE = new TypeToken<Map<String, SkinStorage.SkinData>>() {}.getType();
+
+    private final File dir;
+
+    SkinArchive(File dataDir) {
+        this.dir = new File(dataDir, "archive");
+    }
+
+    private File shardFile(String playerUUID) {
+        return new File(dir, playerUUID.substring(0, 2).toLowerCase() + ".json");
+    }
+
+    /**
+     * Cheap check before a restore: false means the player is definitely not archived.
+     */
+    boolean mayContain(String playerUUID) {
+        return shardFile(playerUUID).isFile();
+    }
+
+    /**
+     * Move entries into the archive, one read and one write per shard touched.
+     */
+    synchronized void archive(Map<String, SkinStorage.SkinData> entries) throws Exception {
+        Map<File, Map<String, SkinStorage.SkinData>> byShard = new HashMap<File, Map<String, SkinStorage.SkinData>>();
+        for (Map.Entry<String, SkinStorage.SkinData> entry : entries.entrySet()) {
+            File shard = shardFile(entry.getKey());
+            Map<String, SkinStorage.SkinData> group = byShard.get(shard);
+            if (group == null) {
+                group = new HashMap<String, SkinStorage.SkinData>();
+                byShard.put(shard, group);
+            }
+            group.put(entry.getKey(), entry.getValue());
+        }
+
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        for (Map.Entry<File, Map<String, SkinStorage.SkinData>> shard : byShard.entrySet()) {
+            Map<String, SkinStorage.SkinData> contents = readShard(shard.getKey());
+            contents.putAll(shard.getValue());
+            writeShard(shard.getKey(), contents);
+        }
+    }
+
+    /**
+     * Take a player's entry out of the archive.
+     *
+     * @return the entry, or null if the player is not archived
+     */
+    synchronized SkinStorage.SkinData restore(String playerUUID) {
+        File shard = shardFile(playerUUID);
+        if (!shard.isFile()) {
+            return null;
+        }
+        try {
+            Map<String, SkinStorage.SkinData> contents = readShard(shard);
+            SkinStorage.SkinData data = contents.remove(playerUUID);
+            if (data == null) {
+                return null;
+            }
+            if (contents.isEmpty()) {
+                shard.delete();
+            } else {
+                writeShard(shard, contents);
+            }
+            return data;
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.error("Failed to restore archived skin for " + playerUUID, e);
+            return null;
+        }
+    }
+
+    private Map<String, SkinStorage.SkinData> readShard(File shard) throws Exception {
+        if (!shard.isFile()) {
+            return new HashMap<String, SkinStorage.SkinData>();
+        }
+        FileReader reader = new FileReader(shard);
+        try {
+            Map<String, SkinStorage.SkinData> contents = GSON.fromJson(reader, SHARD_TYPE);
+            return contents != null ? contents : new HashMap<String, SkinStorage.SkinData>();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void writeShard(File shard, Map<String, SkinStorage.SkinData> contents) throws Exception {
+        File temp = new File(shard.getPath() + ".tmp");
+        FileWriter writer = new FileWriter(temp);
+        try {
+            GSON.toJson(contents, writer);
+        } finally {
+            writer.close();
+        }
+        Files.move(temp.toPath(), shard.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,358 @@
+package com.pierce.skinrestorer.skin;
+
+import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.config.ModConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pipelined bulk skin operation used by /skin reloadall and /skin import.
+ *
+ * Stages:
+ * 1. Resolve the distinct skin names in bulk, up to 10 names per Mojang request.
+ *    Names with a cached UUID skip this stage.
+ * 2. As each group of names resolves, fetch its textures concurrently.
+ * 3. Save all results to storage at once.
+ * 4. Apply every online player's new profile in a single tick with one batched viewer refresh.
+ *
+ * A coordinator thread feeds the stages. It paces requests with a rate limiter and
+ * caps concurrency. The HTTP calls themselves run as BULK jobs on the fetch pipeline's
+ * resolve and texture stages, so a bulk run never holds up logins or player commands.
+ * Only one batch runs at a time.
+ */
+public class SkinBatch {
+
+    /**
+     * Receives progress updates. Called from worker threads.
+     */
+    public interface Listener {
+        void onProgress(SkinBatch batch);
+
+        void onFinished(SkinBatch batch);
+    }
+
+    /**
+     * One player whose skin should be set to a Mojang username.
+     */
+    public static final class Entry {
+        public final String playerUUID;
+        public final String playerName;
+        public final String skinSource;
+        public final SkinStorage.SkinData readAt; // Stored entry when the batch was planned, null if none
+
+        public Entry(String playerUUID, String playerName, String skinSource, SkinStorage.SkinData readAt) {
+            this.playerUUID = playerUUID;
+            this.playerName = playerName;
+            this.skinSource = skinSource;
+            this.readAt = readAt;
+        }
+    }
+
+    private static final AtomicReference<SkinBatch> active = new AtomicReference<SkinBatch>();
+
+    private final String name;
+    private final Listener listener;
+    private final Map<String, List<Entry>> entriesBySource = new LinkedHashMap<String, List<Entry>>();
+    private final int totalPlayers;
+
+    // Work waiting for the coordinator: String[] name groups to resolve, or ResolvedName to fetch
+    private final LinkedBlockingQueue<Object> work = new LinkedBlockingQueue<Object>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    // Lower-case skin name -> fetched skin
+    private final Map<String, SkinSnapshot> fetched = new ConcurrentHashMap<String, SkinSnapshot>();
+
+    private final AtomicInteger namesFetched = new AtomicInteger();
+    private final AtomicInteger namesFailed = new AtomicInteger();
+    private final long startedAt = System.currentTimeMillis();
+
+    private volatile boolean cancelled = false;
+    private final CountDownLatch cancelSignal = new CountDownLatch(1); // Wakes the coordinator on cancel
+    private volatile int playersApplied = 0;
+
+    private SkinBatch(String name, List<Entry> entries, Listener listener) {
+        this.name = name;
+        this.listener = listener;
+        this.totalPlayers = entries.size();
+
+        for (Entry entry : entries) {
+            String key = entry.skinSource.toLowerCase();
+            List<Entry> group = entriesBySource.get(key);
+            if (group == null) {
+                group = new ArrayList<Entry>();
+                entriesBySource.put(key, group);
+            }
+            group.add(entry);
+        }
+    }
+
+    /**
+     * Start a batch.
+     *
+     * @return the running batch, or null if another batch is still running
+     */
+    public static SkinBatch start(String name, List<Entry> entries, Listener listener) {
+        final SkinBatch batch = new SkinBatch(name, entries, listener);
+        if (!active.compareAndSet(null, batch)) {
+            return null;
+        }
+
+        Thread coordinator = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                batch.run();
+            }
+        }, "SkinBatch-" + name);
+        coordinator.setDaemon(true);
+        coordinator.start();
+        return batch;
+    }
+
+    /**
+     * The batch currently running, or null.
+     */
+    public static SkinBatch getActive() {
+        return active.get();
+    }
+
+    /**
+     * Stop queuing new requests. Skins already fetched are still saved and applied.
+     */
+    public void cancel() {
+        cancelled = true;
+        cancelSignal.countDown();
+    }
+
+    private void run() {
+        try {
+            List<String> names = new ArrayList<String>();
+            for (String n : entriesBySource.keySet()) {
+                String uuid = SkinFetchPipeline.getCachedUuid(n);
+                if (uuid != null) {
+                    work.add(new ResolvedName(n, uuid));
+                } else {
+                    names.add(n);
+                }
+            }
+            for (int i = 0; i < names.size(); i += SkinFetcher.BULK_UUID_LIMIT) {
+                List<String> group = names.subList(i, Math.min(names.size(), i + SkinFetcher.BULK_UUID_LIMIT));
+                work.add(group.toArray(new String[0]));
+            }
+
+            // Read once: a config reload during the batch must not change the final acquire below
+            final int permits = ModConfig.bulkConcurrency;
+            RateLimiter limiter = new RateLimiter(ModConfig.bulkRequestsPerMinute);
+            Semaphore concurrency = new Semaphore(permits);
+
+            while (!cancelled) {
+                Object item = work.poll(100, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    // Jobs add follow-up work before they finish, so this cannot miss any
+                    if (outstanding.get() == 0 && work.isEmpty()) {
+                        break;
+                    }
+                    if (!SkinFetchPipeline.isRunning()) {
+                        cancel(); // Shut down: queued jobs were dropped and will never finish
+                    }
+                    continue;
+                }
+
+                if (!acquire(concurrency, 1, true)) {
+                    break;
+                }
+                if (!pace(limiter) || !submit(item, concurrency)) {
+                    concurrency.release();
+                    cancel();
+                }
+            }
+
+            // Let requests already in flight finish (bounded by the HTTP timeouts)
+            acquire(concurrency, permits, false);
+            commit();
+        } catch (InterruptedException e) {
+            cancel();
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.error("Skin batch " + name + " failed", e);
+            cancel();
+        } finally {
+            active.compareAndSet(this, null);
+            listener.onFinished(this);
+        }
+    }
+
+    /**
+     * Wait for concurrency permits. Gives up once the pipeline shuts down, as jobs it drops from
+     * its queues never return theirs, and on cancel if untilCancelled is set.
+     */
+    private boolean acquire(Semaphore concurrency, int permits, boolean untilCancelled) throws InterruptedException {
+        while (!concurrency.tryAcquire(permits, 100, TimeUnit.MILLISECONDS)) {
+            if ((untilCancelled && cancelled) || !SkinFetchPipeline.isRunning()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait for the rate limiter to allow the next request.
+     *
+     * @return false if the batch was cancelled while waiting
+     */
+    private boolean pace(RateLimiter limiter) throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = limiter.tryAcquire()) > 0) {
+            if (cancelSignal.await(waitNanos, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean submit(final Object item, final Semaphore concurrency) {
+        outstanding.incrementAndGet();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (item instanceof String[]) {
+                        resolve((String[]) item);
+                    } else {
+                        fetch((ResolvedName) item);
+                    }
+                } finally {
+                    outstanding.decrementAndGet();
+                    concurrency.release();
+                    listener.onProgress(SkinBatch.this);
+                }
+            }
+        };
+        boolean submitted = item instanceof String[]
+            ? SkinFetchPipeline.submitResolve(SkinJobScheduler.JobClass.BULK, "batch " + name, task)
+            : SkinFetchPipeline.submitTexture(SkinJobScheduler.JobClass.BULK, "batch " + name, task);
+        if (!submitted) {
+            outstanding.decrementAndGet();
+        }
+        return submitted;
+    }
+
+    private void resolve(String[] names) {
+        List<String> group = new ArrayList<String>(names.length);
+        for (String n : names) {
+            group.add(n);
+        }
+
+        Map<String, String> uuids = SkinFetcher.getUUIDsFromUsernames(group);
+        if (uuids == null) {
+            namesFailed.addAndGet(names.length);
+            return;
+        }
+
+        for (String n : names) {
+            String uuid = uuids.get(n);
+            if (uuid == null) {
+                namesFailed.incrementAndGet();
+                PierceSkinRestorer.LOGGER.warn("Could not find UUID for username: " + n);
+            } else {
+                SkinFetchPipeline.cacheUuid(n, uuid, System.currentTimeMillis());
+                work.add(new ResolvedName(n, uuid));
+            }
+        }
+    }
+
+    private void fetch(ResolvedName resolved) {
+        SkinSnapshot snapshot = SkinSnapshot.of(SkinFetcher.fetchProfileTextures(resolved.uuid));
+        if (snapshot == null) {
+            namesFailed.incrementAndGet();
+        } else {
+            fetched.put(resolved.name, snapshot);
+            namesFetched.incrementAndGet();
+            SharedSkinCache.put(resolved.name, resolved.uuid, snapshot);
+        }
+    }
+
+    /**
+     * Save everything fetched so far in one write, then apply it in one tick. Players who set
+     * or cleared their skin while the batch ran keep that change.
+     */
+    private void commit() {
+        Map<String, SkinStorage.SkinData> stored = new HashMap<String, SkinStorage.SkinData>();
+        Map<String, SkinStorage.SkinData> readAt = new HashMap<String, SkinStorage.SkinData>();
+        Map<String, SkinSnapshot> snapshots = new HashMap<String, SkinSnapshot>();
+
+        for (Map.Entry<String, SkinSnapshot> result : fetched.entrySet()) {
+            for (Entry entry : entriesBySource.get(result.getKey())) {
+                stored.put(entry.playerUUID, new SkinStorage.SkinData(
+                    entry.playerName, entry.skinSource, SkinStorage.SkinType.MOJANG_USERNAME));
+                if (entry.readAt != null) {
+                    readAt.put(entry.playerUUID, entry.readAt);
+                }
+                snapshots.put(entry.playerUUID, result.getValue());
+            }
+        }
+
+        playersApplied = SkinManager.commitBatch(stored, readAt, snapshots);
+
+        PierceSkinRestorer.LOGGER.info("Skin batch " + name + " applied " + playersApplied + "/" + totalPlayers
+            + " players in " + getElapsedMillis() + "ms" + (cancelled ? " (cancelled)" : ""));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getTotalPlayers() {
+        return totalPlayers;
+    }
+
+    public int getTotalNames() {
+        return entriesBySource.size();
+    }
+
+    public int getNamesFetched() {
+        return namesFetched.get();
+    }
+
+    public int getNamesFailed() {
+        return namesFailed.get();
+    }
+
+    /**
+     * Names whose fetch has finished, successfully or not.
+     */
+    public int getNamesDone() {
+        return namesFetched.get() + namesFailed.get();
+    }
+
+    public int getPlayersApplied() {
+        return playersApplied;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - startedAt;
+    }
+
+    private static final class ResolvedName {
+        final String name;
+        final String uuid;
+
+        ResolvedName(String name, String uuid) {
+            this.name = name;
+            this.uuid = uuid;
+        }
+    }
+}
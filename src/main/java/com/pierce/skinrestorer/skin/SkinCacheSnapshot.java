@@ -0,0 +1,192 @@
+package com.pierce.skinrestorer.skin;
+
+import com.pierce.skinrestorer.PierceSkinRestorer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export and import of the resolved skin caches, so a new or restored server starts warm.
+ *
+ * The file is a gzipped binary stream:
+ *   header   - magic, format version, creation time
+ *   textures - each distinct skin name once: name, Mojang UUID, texture value, signature, fetch time
+ *   players  - player UUID and an index into the texture table
+ * Textures shared by many players are written once. Fetch times are kept, so skins
+ * that were already old when exported are still revalidated after import (see skinCacheTtlMinutes).
+ */
+public class SkinCacheSnapshot {
+
+    private static final int MAGIC = 0x50535243; // "PSRC"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * What an export or import did.
+     */
+    public static final class Result {
+        public final int textures;
+        public final int players;
+        public final long bytes;
+        public final long millis;
+
+        Result(int textures, int players, long bytes, long millis) {
+            this.textures = textures;
+            this.players = players;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return players + " players, " + textures + " distinct skins, " + bytes + " bytes in " + millis + "ms";
+        }
+    }
+
+    /**
+     * Write every cached Mojang skin to a snapshot file. Presets are not exported;
+     * they live in presets.json.
+     */
+    public static Result export(File file) throws IOException {
+        long start = System.currentTimeMillis();
+
+        // Group players by skin name so each texture is written once
+        Map<String, Integer> textureIndex = new HashMap<String, Integer>();
+        List<String> names = new ArrayList<String>();
+        List<SkinSnapshot> textures = new ArrayList<SkinSnapshot>();
+        List<String> playerUUIDs = new ArrayList<String>();
+        List<Integer> playerTextures = new ArrayList<Integer>();
+
+        for (Map.Entry<String, SkinSnapshot> cached : SkinManager.getCachedSkins().entrySet()) {
+            SkinStorage.SkinData stored = SkinStorage.getSkin(cached.getKey());
+            if (stored == null || stored.skinType != SkinStorage.SkinType.MOJANG_USERNAME) {
+                continue;
+            }
+
+            String name = stored.skinSource.toLowerCase();
+            Integer index = textureIndex.get(name);
+            if (index == null || !textures.get(index).sameTexture(cached.getValue())) {
+                index = textures.size();
+                textureIndex.put(name, index);
+                names.add(name);
+                textures.add(cached.getValue());
+            }
+            playerUUIDs.add(cached.getKey());
+            playerTextures.add(index);
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            out.writeInt(textures.size());
+            for (int i = 0; i < textures.size(); i++) {
+                SkinSnapshot snapshot = textures.get(i);
+                out.writeUTF(names.get(i));
+                writeNullable(out, snapshot.getSourceUUID());
+                out.writeUTF(snapshot.getTextureValue());
+                writeNullable(out, snapshot.getTextureSignature());
+                out.writeLong(snapshot.getFetchedAt());
+            }
+
+            out.writeInt(playerUUIDs.size());
+            for (int i = 0; i < playerUUIDs.size(); i++) {
+                UUID uuid = UUID.fromString(playerUUIDs.get(i));
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+                out.writeInt(playerTextures.get(i));
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Result result = new Result(textures.size(), playerUUIDs.size(), file.length(), System.currentTimeMillis() - start);
+        PierceSkinRestorer.LOGGER.info("Exported skin cache snapshot to " + file.getName() + ": " + result);
+        return result;
+    }
+
+    /**
+     * Stream a snapshot file into the skin cache. Players whose skin is already cached,
+     * or who no longer use the exported skin name, are skipped.
+     */
+    public static Result importFrom(File file) throws IOException {
+        SkinStorage.awaitLoaded(); // Every player is checked against skins.json
+        long start = System.currentTimeMillis();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a skin cache snapshot");
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            in.readLong(); // Creation time
+
+            int textureCount = in.readInt();
+            String[] names = new String[textureCount];
+            SkinSnapshot[] textures = new SkinSnapshot[textureCount];
+            for (int i = 0; i < textureCount; i++) {
+                names[i] = in.readUTF();
+                String sourceUUID = readNullable(in);
+                String value = in.readUTF();
+                String signature = readNullable(in);
+                textures[i] = new SkinSnapshot(value, signature, sourceUUID, in.readLong());
+                if (sourceUUID != null) {
+                    SkinFetchPipeline.cacheUuid(names[i], sourceUUID, textures[i].getFetchedAt());
+                }
+            }
+
+            int playerCount = in.readInt();
+            int imported = 0;
+            for (int i = 0; i < playerCount; i++) {
+                String playerUUID = new UUID(in.readLong(), in.readLong()).toString();
+                int index = in.readInt();
+
+                // Only warm players whose stored choice still matches what was exported
+                SkinStorage.SkinData stored = SkinStorage.getSkin(playerUUID);
+                if (stored != null && stored.skinType == SkinStorage.SkinType.MOJANG_USERNAME
+                    && stored.skinSource.equalsIgnoreCase(names[index])
+                    && SkinManager.seedSkinCache(playerUUID, textures[index])) {
+                    imported++;
+                }
+            }
+
+            Result result = new Result(textureCount, imported, file.length(), System.currentTimeMillis() - start);
+            PierceSkinRestorer.LOGGER.info("Imported skin cache snapshot " + file.getName() + ": " + result
+                + " (" + (playerCount - imported) + " players skipped)");
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,316 @@
+package com.pierce.skinrestorer.skin;
+
+import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.config.ModConfig;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches skins from Mojang in two stages, each with its own worker pool and priority queue:
+ *
+ * 1. Resolve - skin name to Mojang UUID (api.mojang.com)
+ * 2. Texture - Mojang UUID to signed textures (sessionserver.mojang.com)
+ *
+ * A resolved request is handed to the texture stage, so a slow session server only
+ * backs up the texture queue while names keep resolving. Names whose UUID is already
+ * cached skip straight to the texture stage. Both stages order work by job class.
+ */
+public class SkinFetchPipeline {
+
+    /**
+     * Receives the outcome of a fetch. Called from a stage worker.
+     */
+    public abstract static class Callback {
+        /** The first stage picked up the request. */
+        public void onStarted() {
+        }
+
+        /** The name was resolved by Mojang (not called for cached UUIDs or shared cache hits). */
+        public void onUuidResolved(String uuid) {
+        }
+
+        /**
+         * @param snapshot The skin, or null if it could not be fetched
+         */
+        public abstract void onComplete(SkinSnapshot snapshot);
+    }
+
+    private static volatile SkinJobScheduler resolveStage;
+    private static volatile SkinJobScheduler textureStage;
+
+    // Lower-case skin name -> Mojang UUID
+    private static final Map<String, CachedUuid> uuidCache = new ConcurrentHashMap<String, CachedUuid>();
+
+    /**
+     * Fetch a skin in the background.
+     *
+     * @param skinName Minecraft username whose skin to fetch
+     * @param jobClass Priority in both stages
+     * @param allowShared Whether a fresh copy in the shared cache directory may be used instead of Mojang
+     * @return false if the pipeline is not running; the callback has then already been told
+     */
+    public static boolean fetch(String skinName, SkinJobScheduler.JobClass jobClass, boolean allowShared, Callback callback) {
+        Request request = new Request(skinName, jobClass, allowShared, callback);
+        request.uuid = getCachedUuid(skinName);
+        boolean submitted = request.uuid != null ? submitTexture(request) : submitResolve(request);
+        if (!submitted) {
+            callback.onComplete(null);
+        }
+        return submitted;
+    }
+
+    /**
+     * Fetch a skin and wait for it. For jobs that already run off the server thread.
+     *
+     * @return the skin, or null if it could not be fetched
+     */
+    public static SkinSnapshot fetchAndWait(String skinName, SkinJobScheduler.JobClass jobClass, boolean allowShared) {
+        final CountDownLatch done = new CountDownLatch(1);
+        final SkinSnapshot[] result = new SkinSnapshot[1];
+        fetch(skinName, jobClass, allowShared, new Callback() {
+            @Override
+            public void onComplete(SkinSnapshot snapshot) {
+                result[0] = snapshot;
+                done.countDown();
+            }
+        });
+
+        try {
+            // Queued requests are dropped on shutdown, so stop waiting once the stages are gone
+            while (!done.await(1, TimeUnit.SECONDS)) {
+                if (resolveStage == null) {
+                    return null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return result[0];
+    }
+
+    private static boolean submitResolve(final Request request) {
+        return submitResolve(request.jobClass, "resolve " + request.skinName, new Runnable() {
+            @Override
+            public void run() {
+                request.start();
+                resolve(request);
+            }
+        });
+    }
+
+    private static boolean submitTexture(final Request request) {
+        return submitTexture(request.jobClass, "texture " + request.skinName, new Runnable() {
+            @Override
+            public void run() {
+                request.start();
+                fetchTextures(request);
+            }
+        });
+    }
+
+    /**
+     * Run name-resolution work on the resolve stage. Also used by bulk operations.
+     *
+     * @return false if the pipeline is not running
+     */
+    static boolean submitResolve(SkinJobScheduler.JobClass jobClass, String description, Runnable task) {
+        SkinJobScheduler stage = resolveStage;
+        return stage != null && stage.submit(jobClass, description, task);
+    }
+
+    /**
+     * Run texture work on the texture stage. Also used by bulk operations.
+     *
+     * @return false if the pipeline is not running
+     */
+    static boolean submitTexture(SkinJobScheduler.JobClass jobClass, String description, Runnable task) {
+        SkinJobScheduler stage = textureStage;
+        return stage != null && stage.submit(jobClass, description, task);
+    }
+
+    private static void resolve(Request request) {
+        if (request.allowShared && useShared(request)) {
+            return;
+        }
+
+        String uuid = SkinFetcher.getUUIDFromUsername(request.skinName);
+        if (uuid == null) {
+            PierceSkinRestorer.LOGGER.warn("Could not find UUID for username: " + request.skinName);
+            request.complete(null);
+            return;
+        }
+        cacheUuid(request.skinName, uuid, System.currentTimeMillis());
+        request.callback.onUuidResolved(uuid);
+
+        request.uuid = uuid;
+        request.allowShared = false; // Already checked
+        if (!submitTexture(request)) {
+            request.complete(null);
+        }
+    }
+
+    private static void fetchTextures(Request request) {
+        if (request.allowShared && useShared(request)) {
+            return;
+        }
+
+        SkinSnapshot snapshot = SkinSnapshot.of(SkinFetcher.fetchProfileTextures(request.uuid));
+        if (snapshot != null) {
+            SharedSkinCache.put(request.skinName, request.uuid, snapshot);
+        } else {
+            // The name may have moved to another account since we cached its UUID
+            uuidCache.remove(request.skinName.toLowerCase());
+        }
+        request.complete(snapshot);
+    }
+
+    /**
+     * Complete the request from the shared cache if it has a fresh copy.
+     */
+    private static boolean useShared(Request request) {
+        SharedSkinCache.Record shared = SharedSkinCache.get(request.skinName);
+        if (shared == null) {
+            return false;
+        }
+        if (shared.uuid != null) {
+            cacheUuid(request.skinName, shared.uuid, shared.fetchedAt);
+        }
+        request.complete(shared.toSnapshot());
+        return true;
+    }
+
+    /**
+     * @return the Mojang UUID last resolved for a name, or null if unknown or older than uuidCacheTtlMinutes
+     */
+    public static String getCachedUuid(String skinName) {
+        int ttlMinutes = ModConfig.uuidCacheTtlMinutes;
+        if (ttlMinutes <= 0) {
+            return null;
+        }
+
+        String key = skinName.toLowerCase();
+        CachedUuid cached = uuidCache.get(key);
+        if (cached != null && System.currentTimeMillis() - cached.resolvedAt > ttlMinutes * 60000L) {
+            uuidCache.remove(key, cached);
+            cached = null;
+        }
+        if (cached == null) {
+            SkinMetrics.cacheMiss(SkinMetrics.Cache.UUID);
+            return null;
+        }
+        SkinMetrics.cacheHit(SkinMetrics.Cache.UUID);
+        return cached.uuid;
+    }
+
+    /**
+     * Remember a name's Mojang UUID, e.g. from a bulk lookup or a snapshot. An older entry never replaces a newer one.
+     */
+    public static void cacheUuid(String skinName, String uuid, long resolvedAt) {
+        String key = skinName.toLowerCase();
+        CachedUuid entry = new CachedUuid(uuid, resolvedAt);
+        while (true) {
+            CachedUuid existing = uuidCache.putIfAbsent(key, entry);
+            if (existing == null || existing.resolvedAt >= resolvedAt || uuidCache.replace(key, existing, entry)) {
+                return;
+            }
+        }
+    }
+
+    public static int getUuidCacheSize() {
+        return uuidCache.size();
+    }
+
+    /**
+     * False once shutdown() has been called; fetches then fail without reaching Mojang.
+     */
+    public static boolean isRunning() {
+        return resolveStage != null;
+    }
+
+    public static SkinJobScheduler getResolveStage() {
+        return resolveStage;
+    }
+
+    public static SkinJobScheduler getTextureStage() {
+        return textureStage;
+    }
+
+    /**
+     * Start both stages. Called by SkinManager.start().
+     */
+    static void start() {
+        if (resolveStage == null) {
+            resolveStage = new SkinJobScheduler("SkinResolve", ModConfig.resolveThreads, ModConfig.jobStarvationMillis);
+            textureStage = new SkinJobScheduler("SkinTexture", ModConfig.textureThreads, ModConfig.jobStarvationMillis);
+        }
+    }
+
+    static void applyConfig() {
+        SkinJobScheduler resolve = resolveStage;
+        SkinJobScheduler texture = textureStage;
+        if (resolve != null && texture != null) {
+            resolve.setWorkerCount(ModConfig.resolveThreads);
+            resolve.setStarvationMillis(ModConfig.jobStarvationMillis);
+            texture.setWorkerCount(ModConfig.textureThreads);
+            texture.setStarvationMillis(ModConfig.jobStarvationMillis);
+        }
+    }
+
+    static void shutdown() {
+        SkinJobScheduler resolve = resolveStage;
+        SkinJobScheduler texture = textureStage;
+        resolveStage = null;
+        textureStage = null;
+        if (resolve != null) {
+            resolve.shutdown();
+        }
+        if (texture != null) {
+            texture.shutdown();
+        }
+    }
+
+    private static final class CachedUuid {
+        final String uuid;
+        final long resolvedAt;
+
+        CachedUuid(String uuid, long resolvedAt) {
+            this.uuid = uuid;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+
+    /**
+     * One skin moving through the stages. Only touched by one stage at a time.
+     */
+    private static final class Request {
+        final String skinName;
+        final SkinJobScheduler.JobClass jobClass;
+        final Callback callback;
+        boolean allowShared;
+        boolean started;
+        String uuid;
+
+        Request(String skinName, SkinJobScheduler.JobClass jobClass, boolean allowShared, Callback callback) {
+            this.skinName = skinName;
+            this.jobClass = jobClass;
+            this.allowShared = allowShared;
+            this.callback = callback;
+        }
+
+        void start() {
+            if (!started) {
+                started = true;
+                callback.onStarted();
+            }
+        }
+
+        void complete(SkinSnapshot snapshot) {
+            callback.onComplete(snapshot);
+        }
+    }
+}
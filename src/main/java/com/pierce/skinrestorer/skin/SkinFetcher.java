@@ -4,153 +4,426 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.config.ModConfig;
+import com.pierce.skinrestorer.metrics.RollingLatencyHistogram;
+import com.pierce.skinrestorer.metrics.SkinEvents;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Fetches skin data from Mojang API.
  * Returns texture property data that can be injected into GameProfiles.
+ *
+ * Each endpoint can be served by several upstreams (Mojang and compatible mirrors, see
+ * apiUpstreams and sessionUpstreams). A request goes to the fastest healthy upstream. If it
+ * has not answered within hedgePercentile of that upstream's recent response times, the
+ * same request is also sent to the next one, and the first definite answer wins. Errors
+ * and rate limits move on to the next upstream straight away.
+ *
+ * Timeouts follow the observed response times of each endpoint (see getTimeoutMillis), so a
+ * request to a healthy Mojang gives up after a second or two instead of fetchTimeoutSeconds.
  */
 public class SkinFetcher {
 
-    private static final String MOJANG_UUID_API = "https://api.mojang.com/users/profiles/minecraft/";
-    private static final String MOJANG_PROFILE_API = "https://sessionserver.mojang.com/session/minecraft/profile/";
+    public static final String DEFAULT_API_BASE = "https://api.mojang.com";
+    public static final String DEFAULT_SESSION_BASE = "https://sessionserver.mojang.com";
 
-    private static final int TIMEOUT = 10000; // 10 seconds
+    private static final String UUID_PATH = "/users/profiles/minecraft/";
+    private static final String BULK_UUID_PATH = "/profiles/minecraft";
+    private static final String PROFILE_PATH = "/session/minecraft/profile/";
 
     /**
-     * Fetch skin texture property for a Minecraft username.
+     * The kinds of request sent to Mojang, each with its own adaptive timeout.
+     */
+    public enum Endpoint {
+        UUID("uuid"),
+        BULK_UUID("bulk-uuid"),
+        PROFILE("profile");
+
+        final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    // Recent response times per endpoint, across all upstreams, for the adaptive timeouts
+    private static final Map<Endpoint, RollingLatencyHistogram> endpointLatency =
+        new EnumMap<Endpoint, RollingLatencyHistogram>(Endpoint.class);
+    private static final int MIN_TIMEOUT_SAMPLES = 50;
+
+    // Hedging waits for this many recent answers before trusting the percentile
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 1000;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 20;
+
+    private static final UpstreamGroup apiUpstreams = new UpstreamGroup("api", DEFAULT_API_BASE);
+    private static final UpstreamGroup sessionUpstreams = new UpstreamGroup("session", DEFAULT_SESSION_BASE);
+
+    // Base URLs set by system property or setBaseUrls; these win over the config
+    private static volatile List<String> apiOverride = parseUrls(System.getProperty("pierceskinrestorer.apiBase", ""));
+    private static volatile List<String> sessionOverride = parseUrls(System.getProperty("pierceskinrestorer.sessionBase", ""));
+
+    // Runs requests when an endpoint has more than one upstream, so a hedge can start while the first waits
+    private static final ExecutorService hedgePool = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger nextId = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "SkinHttp-" + nextId.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** Most names Mojang accepts in a single bulk UUID lookup. */
+    public static final int BULK_UUID_LIMIT = 10;
+
+    static {
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpointLatency.put(endpoint, new RollingLatencyHistogram(300000));
+        }
+        applyConfig();
+    }
+
+    /**
+     * Point the fetcher at different API hosts, for example a caching mirror or a test server.
+     * Overrides apiUpstreams and sessionUpstreams from the config.
      *
-     * @param username The Minecraft username
-     * @return SkinData containing texture value and signature, or null if failed
+     * @param api Base URL replacing https://api.mojang.com
+     * @param session Base URL replacing https://sessionserver.mojang.com
      */
-    public static SkinData fetchSkinData(String username) {
-        // First, get UUID from Mojang
-        String uuid = getUUIDFromUsername(username);
+    public static void setBaseUrls(String api, String session) {
+        setBaseUrls(Collections.singletonList(api), Collections.singletonList(session));
+    }
 
-        if (uuid == null) {
-            PierceSkinRestorer.LOGGER.warn("Could not find UUID for username: " + username);
-            return null;
+    /**
+     * Same as setBaseUrls(String, String), with several upstreams per endpoint in preference order.
+     */
+    public static void setBaseUrls(List<String> api, List<String> session) {
+        apiOverride = parseUrls(join(api));
+        sessionOverride = parseUrls(join(session));
+        applyConfig();
+    }
+
+    /**
+     * Re-read apiUpstreams and sessionUpstreams.
+     */
+    public static void applyConfig() {
+        List<String> api = !apiOverride.isEmpty() ? apiOverride : parseUrls(ModConfig.apiUpstreams);
+        List<String> session = !sessionOverride.isEmpty() ? sessionOverride : parseUrls(ModConfig.sessionUpstreams);
+        apiUpstreams.setBaseUrls(api.isEmpty() ? Collections.singletonList(DEFAULT_API_BASE) : api);
+        sessionUpstreams.setBaseUrls(session.isEmpty() ? Collections.singletonList(DEFAULT_SESSION_BASE) : session);
+    }
+
+    public static UpstreamGroup getApiUpstreams() {
+        return apiUpstreams;
+    }
+
+    public static UpstreamGroup getSessionUpstreams() {
+        return sessionUpstreams;
+    }
+
+    public static String getApiBase() {
+        return apiUpstreams.getUpstreams().get(0).getBaseUrl();
+    }
+
+    public static String getSessionBase() {
+        return sessionUpstreams.getUpstreams().get(0).getBaseUrl();
+    }
+
+    private static List<String> parseUrls(String value) {
+        List<String> urls = new ArrayList<String>();
+        for (String url : value.split(",")) {
+            url = url.trim();
+            if (!url.isEmpty()) {
+                urls.add(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+            }
         }
+        return urls;
+    }
 
-        // Then get the full profile with textures
-        return fetchProfileTextures(uuid);
+    private static String join(List<String> urls) {
+        StringBuilder sb = new StringBuilder();
+        for (String url : urls) {
+            sb.append(url).append(',');
+        }
+        return sb.toString();
     }
 
     /**
      * Get Mojang UUID from username.
      */
     public static String getUUIDFromUsername(String username) {
-        HttpURLConnection conn = null;
-        BufferedReader reader = null;
+        long start = System.nanoTime();
+        String uuid = requestUUID(username);
+        SkinMetrics.timer(SkinMetrics.Timer.UUID_LOOKUP).recordSince(start);
+        if (uuid == null) {
+            SkinMetrics.increment(SkinMetrics.Counter.UUID_LOOKUP_FAILURES);
+        }
+        return uuid;
+    }
+
+    private static String requestUUID(String username) {
+        Response response = execute(apiUpstreams, Endpoint.UUID, UUID_PATH + username, null);
+        if (response.status != 200) {
+            PierceSkinRestorer.LOGGER.debug("Mojang UUID API returned " + response.status + " for " + username);
+            return null;
+        }
+
         try {
-            URL url = new URL(MOJANG_UUID_API + username);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(TIMEOUT);
-            conn.setReadTimeout(TIMEOUT);
-            conn.setRequestProperty("User-Agent", "PierceSkinRestorer/1.0");
+            String uuid = parseUUIDResponse(response.body);
+            if (uuid != null) {
+                PierceSkinRestorer.LOGGER.debug("Found UUID for " + username + ": " + uuid);
+            }
+            return uuid;
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.error("Error getting UUID for username: " + username, e);
+            return null;
+        }
+    }
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                PierceSkinRestorer.LOGGER.debug("Mojang UUID API returned " + responseCode + " for " + username);
-                return null;
+    /**
+     * Get Mojang UUIDs for up to BULK_UUID_LIMIT usernames in one request.
+     *
+     * @return Lower-case username -> UUID for every name that exists, or null if the request failed
+     */
+    public static Map<String, String> getUUIDsFromUsernames(List<String> usernames) {
+        if (usernames.size() > BULK_UUID_LIMIT) {
+            throw new IllegalArgumentException("At most " + BULK_UUID_LIMIT + " usernames per request");
+        }
+
+        long start = System.nanoTime();
+        Map<String, String> uuids = requestUUIDs(usernames);
+        SkinMetrics.timer(SkinMetrics.Timer.BULK_UUID_LOOKUP).recordSince(start);
+        if (uuids == null) {
+            SkinMetrics.increment(SkinMetrics.Counter.UUID_LOOKUP_FAILURES);
+        }
+        return uuids;
+    }
+
+    private static Map<String, String> requestUUIDs(List<String> usernames) {
+        try {
+            JsonArray body = new JsonArray();
+            for (String username : usernames) {
+                body.add(new JsonPrimitive(username));
             }
 
-            reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+            Response response = execute(apiUpstreams, Endpoint.BULK_UUID, BULK_UUID_PATH, body.toString().getBytes("UTF-8"));
+            if (response.status != 200) {
+                PierceSkinRestorer.LOGGER.warn("Mojang bulk UUID API returned " + response.status + " for " + usernames.size() + " names");
+                return null;
             }
+            return parseBulkUUIDResponse(response.body);
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.error("Error getting UUIDs for " + usernames.size() + " usernames", e);
+            return null;
+        }
+    }
 
-            JsonParser parser = new JsonParser();
-            JsonObject json = parser.parse(response.toString()).getAsJsonObject();
+    /**
+     * Fetch profile textures from Mojang session server.
+     * This returns the signed texture property that can be used in GameProfiles.
+     */
+    public static SkinData fetchProfileTextures(String uuid) {
+        long start = System.nanoTime();
+        SkinData data = requestProfileTextures(uuid);
+        SkinMetrics.timer(SkinMetrics.Timer.PROFILE_FETCH).recordSince(start);
+        if (data == null) {
+            SkinMetrics.increment(SkinMetrics.Counter.PROFILE_FETCH_FAILURES);
+        }
+        return data;
+    }
 
-            if (json.has("id")) {
-                String uuid = json.get("id").getAsString();
-                PierceSkinRestorer.LOGGER.debug("Found UUID for " + username + ": " + uuid);
-                return uuid;
+    private static SkinData requestProfileTextures(String uuid) {
+        // Request unsigned=false to get the signature
+        Response response = execute(sessionUpstreams, Endpoint.PROFILE, PROFILE_PATH + uuid + "?unsigned=false", null);
+        if (response.status != 200) {
+            PierceSkinRestorer.LOGGER.warn("Mojang profile API returned " + response.status + " for UUID " + uuid);
+            return null;
+        }
+
+        try {
+            SkinData data = parseProfileResponse(uuid, response.body);
+            if (data == null) {
+                PierceSkinRestorer.LOGGER.warn("No textures property in profile for UUID " + uuid);
+                return null;
             }
 
+            PierceSkinRestorer.LOGGER.info("Fetched skin data for UUID " + uuid);
+            return data;
         } catch (Exception e) {
-            PierceSkinRestorer.LOGGER.error("Error getting UUID for username: " + username, e);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (Exception ignored) {
+            PierceSkinRestorer.LOGGER.error("Error fetching profile for UUID: " + uuid, e);
+            return null;
+        }
+    }
+
+    /**
+     * Send a request to an endpoint's upstreams, hedging and failing over as described above.
+     *
+     * @param payload JSON body to POST, or null for a GET
+     * @return the first definite answer, or the last failure if no upstream gave one
+     */
+    private static Response execute(UpstreamGroup group, final Endpoint endpoint, final String path, final byte[] payload) {
+        final List<Upstream> order = group.ordered();
+        if (order.size() == 1) {
+            return request(order.get(0), endpoint, path, payload);
+        }
+
+        CompletionService<Response> attempts = new ExecutorCompletionService<Response>(hedgePool);
+        long hedgeDelay = getHedgeDelayMillis(order.get(0));
+        int next = 0;
+        int inFlight = 0;
+        Response last = null;
+        try {
+            attempts.submit(attempt(order.get(next++), endpoint, path, payload));
+            inFlight++;
+            while (inFlight > 0) {
+                boolean canHedge = next < order.size() && hedgeDelay > 0;
+                Future<Response> done = canHedge ? attempts.poll(hedgeDelay, TimeUnit.MILLISECONDS) : attempts.take();
+                if (done == null) {
+                    // Slower than usual - ask the next upstream too. Whichever answers first wins.
+                    attempts.submit(attempt(order.get(next++), endpoint, path, payload));
+                    inFlight++;
+                    SkinMetrics.increment(SkinMetrics.Counter.HEDGED_REQUESTS);
+                    continue;
+                }
+
+                inFlight--;
+                Response response = done.get();
+                if (response.isDefinite()) {
+                    if (response.upstream != order.get(0)) {
+                        response.upstream.recordHedgeWin();
+                    }
+                    return response;
+                }
+                last = response;
+                if (next < order.size() && inFlight == 0) {
+                    attempts.submit(attempt(order.get(next++), endpoint, path, payload));
+                    inFlight++;
                 }
             }
-            if (conn != null) {
-                conn.disconnect();
-            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            PierceSkinRestorer.LOGGER.error("Error requesting " + endpoint.label + " " + path, e.getCause());
         }
+        // Requests still in flight finish in the background and only update upstream statistics
+        return last != null ? last : new Response(order.get(0), -1, null);
+    }
 
-        return null;
+    /**
+     * Connect and read timeout currently used for an endpoint: timeoutFactor times the p99 of its
+     * recent response times, between minTimeoutMillis and fetchTimeoutSeconds. Until enough
+     * responses have been seen, or with timeoutFactor 0, it is fetchTimeoutSeconds.
+     */
+    public static int getTimeoutMillis(Endpoint endpoint) {
+        int ceiling = ModConfig.fetchTimeoutSeconds * 1000;
+        RollingLatencyHistogram latency = endpointLatency.get(endpoint);
+        if (ModConfig.timeoutFactor <= 0 || latency.getCount() < MIN_TIMEOUT_SAMPLES) {
+            return ceiling;
+        }
+        long adaptive = (long) Math.ceil(latency.getPercentileMillis(99) * ModConfig.timeoutFactor);
+        return (int) Math.max(Math.min(ModConfig.minTimeoutMillis, ceiling), Math.min(ceiling, adaptive));
     }
 
     /**
-     * Fetch profile textures from Mojang session server.
-     * This returns the signed texture property that can be used in GameProfiles.
+     * How long to wait for an upstream before hedging: the configured percentile of its recent
+     * response times, or 0 if hedging is disabled.
      */
-    private static SkinData fetchProfileTextures(String uuid) {
+    static long getHedgeDelayMillis(Upstream upstream) {
+        int percentile = ModConfig.hedgePercentile;
+        if (percentile <= 0) {
+            return 0;
+        }
+        if (upstream.getLatency().getCount() < MIN_HEDGE_SAMPLES) {
+            return DEFAULT_HEDGE_DELAY_MILLIS;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, (long) Math.ceil(upstream.getLatency().getPercentileMillis(percentile)));
+    }
+
+    private static Callable<Response> attempt(final Upstream upstream, final Endpoint endpoint, final String path, final byte[] payload) {
+        return new Callable<Response>() {
+            @Override
+            public Response call() {
+                return request(upstream, endpoint, path, payload);
+            }
+        };
+    }
+
+    /**
+     * One HTTP request to one upstream. Never throws; a failed request has status -1.
+     */
+    private static Response request(Upstream upstream, Endpoint endpoint, String path, byte[] payload) {
+        String address = upstream.getBaseUrl() + path;
+        SkinEvents.HttpCall event = SkinEvents.beginHttpCall(endpoint.label, address);
+        int timeout = getTimeoutMillis(endpoint);
+        long start = System.nanoTime();
+        int responseCode = -1;
+        String body = null;
         HttpURLConnection conn = null;
         BufferedReader reader = null;
         try {
-            // Request unsigned=false to get the signature
-            URL url = new URL(MOJANG_PROFILE_API + uuid + "?unsigned=false");
+            URL url = new URL(address);
             conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(TIMEOUT);
-            conn.setReadTimeout(TIMEOUT);
+            conn.setRequestMethod(payload != null ? "POST" : "GET");
+            conn.setConnectTimeout(timeout);
+            conn.setReadTimeout(timeout);
             conn.setRequestProperty("User-Agent", "PierceSkinRestorer/1.0");
 
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                PierceSkinRestorer.LOGGER.warn("Mojang profile API returned " + responseCode + " for UUID " + uuid);
-                return null;
-            }
-
-            reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
-            }
-
-            JsonParser parser = new JsonParser();
-            JsonObject json = parser.parse(response.toString()).getAsJsonObject();
-
-            if (!json.has("properties")) {
-                PierceSkinRestorer.LOGGER.warn("No properties in profile for UUID " + uuid);
-                return null;
+            if (payload != null) {
+                conn.setRequestProperty("Content-Type", "application/json");
+                conn.setDoOutput(true);
+                OutputStream out = conn.getOutputStream();
+                try {
+                    out.write(payload);
+                } finally {
+                    out.close();
+                }
             }
 
-            // Find textures property
-            JsonArray properties = json.getAsJsonArray("properties");
-            for (JsonElement prop : properties) {
-                JsonObject propObj = prop.getAsJsonObject();
-                if (propObj.get("name").getAsString().equals("textures")) {
-                    String value = propObj.get("value").getAsString();
-                    String signature = propObj.has("signature") ? propObj.get("signature").getAsString() : null;
-
-                    SkinData data = new SkinData();
-                    data.uuid = uuid;
-                    data.textureValue = value;
-                    data.textureSignature = signature;
-
-                    PierceSkinRestorer.LOGGER.info("Fetched skin data for UUID " + uuid);
-                    return data;
+            responseCode = conn.getResponseCode();
+            if (responseCode == 200) {
+                reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+                StringBuilder response = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    response.append(line);
                 }
+                body = response.toString();
             }
-
+        } catch (SocketTimeoutException e) {
+            PierceSkinRestorer.LOGGER.warn("Request to " + address + " timed out after " + timeout + "ms");
+            responseCode = -1;
+            // Count it as at least that slow, so the timeout grows back if the upstream really is slower now
+            endpointLatency.get(endpoint).recordNanos(timeout * 1000000L);
         } catch (Exception e) {
-            PierceSkinRestorer.LOGGER.error("Error fetching profile for UUID: " + uuid, e);
+            PierceSkinRestorer.LOGGER.warn("Request to " + address + " failed: " + e);
+            responseCode = -1;
         } finally {
             if (reader != null) {
                 try {
@@ -161,8 +434,70 @@ public class SkinFetcher {
             if (conn != null) {
                 conn.disconnect();
             }
+            event.end(responseCode);
         }
 
+        Response response = new Response(upstream, responseCode, body);
+        if (response.isDefinite()) {
+            long elapsed = System.nanoTime() - start;
+            upstream.recordSuccess(elapsed);
+            endpointLatency.get(endpoint).recordNanos(elapsed);
+        } else {
+            upstream.recordFailure();
+        }
+        return response;
+    }
+
+    /**
+     * Parse a response from the single-name UUID endpoint.
+     *
+     * @return the UUID without dashes, or null if the response has none
+     */
+    public static String parseUUIDResponse(String body) {
+        JsonObject json = new JsonParser().parse(body).getAsJsonObject();
+        return json.has("id") ? json.get("id").getAsString() : null;
+    }
+
+    /**
+     * Parse a response from the bulk UUID endpoint.
+     *
+     * @return Lower-case username -> UUID without dashes
+     */
+    public static Map<String, String> parseBulkUUIDResponse(String body) {
+        Map<String, String> result = new HashMap<String, String>();
+        JsonArray profiles = new JsonParser().parse(body).getAsJsonArray();
+        for (JsonElement element : profiles) {
+            JsonObject profile = element.getAsJsonObject();
+            if (profile.has("id") && profile.has("name")) {
+                result.put(profile.get("name").getAsString().toLowerCase(), profile.get("id").getAsString());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parse a session server profile response.
+     *
+     * @return the textures property, or null if the profile has none
+     */
+    public static SkinData parseProfileResponse(String uuid, String body) {
+        JsonObject json = new JsonParser().parse(body).getAsJsonObject();
+        if (!json.has("properties")) {
+            return null;
+        }
+
+        // Find textures property
+        JsonArray properties = json.getAsJsonArray("properties");
+        for (JsonElement prop : properties) {
+            JsonObject propObj = prop.getAsJsonObject();
+            if (propObj.get("name").getAsString().equals("textures")) {
+                SkinData data = new SkinData();
+                data.uuid = uuid;
+                data.textureValue = propObj.get("value").getAsString();
+                data.textureSignature = propObj.has("signature") ? propObj.get("signature").getAsString() : null;
+                return data;
+            }
+        }
         return null;
     }
 
@@ -180,6 +515,28 @@ public class SkinFetcher {
                uuid.substring(20);
     }
 
+    /**
+     * Outcome of one HTTP request.
+     */
+    private static final class Response {
+        final Upstream upstream;
+        final int status;    // -1 if the request failed without a response
+        final String body;   // Only read for 200
+
+        Response(Upstream upstream, int status, String body) {
+            this.upstream = upstream;
+            this.status = status;
+            this.body = body;
+        }
+
+        /**
+         * An answer another upstream would not improve on. "Not found" counts; errors and rate limits do not.
+         */
+        boolean isDefinite() {
+            return status >= 200 && status < 500 && status != 429;
+        }
+    }
+
     /**
      * Container for skin texture data.
      */
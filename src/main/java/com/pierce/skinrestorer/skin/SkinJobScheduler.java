@@ -0,0 +1,322 @@
+package com.pierce.skinrestorer.skin;
+
+import com.pierce.skinrestorer.PierceSkinRestorer;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs skin work on a small worker pool, ordered by job class.
+ *
+ * Scheduling uses stride scheduling: each class has a weight, and the non-empty class
+ * with the lowest "pass" runs next, so a busy class gets at most its weighted share.
+ * Ties go to the higher-priority class, so new login work jumps ahead of queued
+ * background work. A job whose wait exceeds the starvation limit runs next regardless.
+ * The worker count and starvation limit can be changed while running.
+ */
+public class SkinJobScheduler {
+
+    /**
+     * Job classes, highest priority first.
+     */
+    public enum JobClass {
+        LOGIN(8),       // Player joining - their skin should be ready before they spawn
+        COMMAND(4),     // Someone is waiting on /skin set or /skin reload
+        BULK(2),        // Admin bulk operations
+        BACKGROUND(1);  // Revalidation nobody is waiting on
+
+        final int weight;
+
+        JobClass(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static final long STRIDE_BASE = 1L << 20;
+
+    private final Object lock = new Object();
+    private final Map<JobClass, ClassQueue> queues = new EnumMap<JobClass, ClassQueue>(JobClass.class);
+    private final String name;
+    private volatile long starvationNanos;
+    private long globalPass = 0;
+    private volatile boolean running = true;
+
+    // Guarded by lock: workers above the target exit once they finish their current job
+    private int targetWorkers = 0;
+    private int liveWorkers = 0;
+    private int nextWorkerId = 1;
+    private int drainWaiters = 0; // Threads in awaitDrained(), guarded by lock
+
+    public SkinJobScheduler(String name, int workerCount, long starvationMillis) {
+        this.name = name;
+        this.starvationNanos = starvationMillis * 1000000L;
+        for (JobClass jobClass : JobClass.values()) {
+            queues.put(jobClass, new ClassQueue(jobClass));
+        }
+        setWorkerCount(workerCount);
+    }
+
+    /**
+     * Grow or shrink the worker pool. Surplus workers finish their current job before exiting.
+     */
+    public void setWorkerCount(int workerCount) {
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            targetWorkers = Math.max(1, workerCount);
+            while (liveWorkers < targetWorkers) {
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        workerLoop();
+                    }
+                }, name + "-" + nextWorkerId++);
+                worker.setDaemon(true);
+                worker.start();
+                liveWorkers++;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    public int getWorkerCount() {
+        synchronized (lock) {
+            return liveWorkers;
+        }
+    }
+
+    public void setStarvationMillis(long starvationMillis) {
+        this.starvationNanos = starvationMillis * 1000000L;
+    }
+
+    /**
+     * Queue a job.
+     *
+     * @param jobClass Priority class of the job
+     * @param description Short description for logs
+     * @param task The work to run
+     * @return false if the scheduler has been shut down
+     */
+    public boolean submit(JobClass jobClass, String description, Runnable task) {
+        synchronized (lock) {
+            if (!running) {
+                return false;
+            }
+
+            ClassQueue queue = queues.get(jobClass);
+            if (queue.jobs.isEmpty()) {
+                // A class that was idle may not claim the time it missed
+                queue.pass = Math.max(queue.pass, globalPass);
+            }
+            queue.jobs.addLast(new Job(jobClass, description, task));
+            // awaitDrained waits on the same monitor, so notify() could wake it instead of a worker
+            lock.notifyAll();
+        }
+        return true;
+    }
+
+    private void workerLoop() {
+        while (true) {
+            Job job = null;
+            synchronized (lock) {
+                while (running && liveWorkers <= targetWorkers && (job = nextJob()) == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        liveWorkers--;
+                        return;
+                    }
+                }
+                if (job == null) {
+                    liveWorkers--; // Shut down, or retired by setWorkerCount
+                    return;
+                }
+            }
+
+            ClassQueue queue = queues.get(job.jobClass);
+            long waited = System.nanoTime() - job.queuedAt;
+            queue.totalWaitNanos.addAndGet(waited);
+            queue.completed.incrementAndGet();
+            updateMax(queue.maxWaitNanos, waited);
+
+            try {
+                job.task.run();
+            } catch (Throwable t) {
+                PierceSkinRestorer.LOGGER.error("Skin job failed: " + job.description, t);
+            } finally {
+                synchronized (lock) {
+                    queue.running--;
+                    if (drainWaiters > 0) {
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Pick the next job. Caller must hold the lock.
+     */
+    private Job nextJob() {
+        long now = System.nanoTime();
+        ClassQueue chosen = null;
+        ClassQueue starving = null;
+
+        for (ClassQueue queue : queues.values()) {
+            Job head = queue.jobs.peekFirst();
+            if (head == null) {
+                continue;
+            }
+            if (now - head.queuedAt > starvationNanos
+                && (starving == null || head.queuedAt < starving.jobs.peekFirst().queuedAt)) {
+                starving = queue;
+            }
+            // Iteration is in priority order, so strict less-than breaks ties toward higher priority
+            if (chosen == null || queue.pass < chosen.pass) {
+                chosen = queue;
+            }
+        }
+
+        if (starving != null) {
+            chosen = starving;
+        }
+        if (chosen == null) {
+            return null;
+        }
+
+        globalPass = chosen.pass;
+        chosen.pass += STRIDE_BASE / chosen.jobClass.weight;
+        chosen.running++;
+        return chosen.jobs.pollFirst();
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Number of jobs of a class waiting to run.
+     */
+    public int getQueueDepth(JobClass jobClass) {
+        synchronized (lock) {
+            return queues.get(jobClass).jobs.size();
+        }
+    }
+
+    /**
+     * Total number of jobs waiting to run.
+     */
+    public int getTotalQueueDepth() {
+        synchronized (lock) {
+            int total = 0;
+            for (ClassQueue queue : queues.values()) {
+                total += queue.jobs.size();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Average time a started job of this class spent queued, in milliseconds.
+     */
+    public double getAverageWaitMillis(JobClass jobClass) {
+        ClassQueue queue = queues.get(jobClass);
+        long completed = queue.completed.get();
+        return completed == 0 ? 0 : queue.totalWaitNanos.get() / (double) completed / 1000000.0;
+    }
+
+    /**
+     * Longest time a started job of this class spent queued, in milliseconds.
+     */
+    public double getMaxWaitMillis(JobClass jobClass) {
+        return queues.get(jobClass).maxWaitNanos.get() / 1000000.0;
+    }
+
+    /**
+     * Number of jobs of this class that have been started.
+     */
+    public long getStartedCount(JobClass jobClass) {
+        return queues.get(jobClass).completed.get();
+    }
+
+    /**
+     * Wait until no job of the given classes is queued or running. Other work keeps running,
+     * and new jobs are still accepted, so work handed on by a running job is waited for too.
+     *
+     * @return false if the timeout passed first
+     */
+    public boolean awaitDrained(long timeoutMillis, JobClass... classes) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        synchronized (lock) {
+            drainWaiters++;
+            try {
+                while (true) {
+                    boolean drained = true;
+                    for (JobClass jobClass : classes) {
+                        ClassQueue queue = queues.get(jobClass);
+                        if (!queue.jobs.isEmpty() || queue.running > 0) {
+                            drained = false;
+                            break;
+                        }
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (drained || remaining <= 0) {
+                        return drained;
+                    }
+                    lock.wait(Math.max(1, remaining / 1000000L));
+                }
+            } finally {
+                drainWaiters--;
+            }
+        }
+    }
+
+    /**
+     * Stop accepting work and stop the workers once their current job finishes.
+     * Queued jobs are dropped.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            running = false;
+            for (ClassQueue queue : queues.values()) {
+                queue.jobs.clear();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private static final class ClassQueue {
+        final JobClass jobClass;
+        final ArrayDeque<Job> jobs = new ArrayDeque<Job>();
+        final AtomicLong totalWaitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        long pass = 0;
+        int running = 0; // Jobs started and not yet finished, guarded by the scheduler lock
+
+        ClassQueue(JobClass jobClass) {
+            this.jobClass = jobClass;
+        }
+    }
+
+    private static final class Job {
+        final JobClass jobClass;
+        final String description;
+        final Runnable task;
+        final long queuedAt = System.nanoTime();
+
+        Job(JobClass jobClass, String description, Runnable task) {
+            this.jobClass = jobClass;
+            this.description = description;
+            this.task = task;
+        }
+    }
+}
@@ -3,24 +3,67 @@ package com.pierce.skinrestorer.skin;
 import com.mojang.authlib.GameProfile;
 import com.mojang.authlib.properties.Property;
 import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.config.ModConfig;
+import com.pierce.skinrestorer.metrics.JoinTracer;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
 import com.pierce.skinrestorer.network.SkinPacketHandler;
 import net.minecraft.entity.player.EntityPlayerMP;
-import net.minecraft.server.MinecraftServer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Main skin management class for server-side operation.
  * Coordinates between fetching, storage, and GameProfile modification.
+ *
+ * Threading: fetch threads never touch a live GameProfile. They queue an immutable
+ * SkinSnapshot which the server thread applies at the start of the next tick.
+ * Netty event loops only read the spawn profile in each PlayerSession, which is rebuilt
+ * (never mutated) on every change.
  */
 public class SkinManager {
 
-    // Cache of modified GameProfiles (player UUID -> modified profile with skin)
-    private static final Map<String, GameProfile> profileCache = new ConcurrentHashMap<String, GameProfile>();
+    // Cache of fetched skin data (player UUID -> skin snapshot)
+    private static final Map<String, SkinSnapshot> skinDataCache = new ConcurrentHashMap<String, SkinSnapshot>();
+
+    // Profile mutations waiting for the server thread (many producers, single consumer)
+    // Each element is applied as a whole, so a bulk batch never straddles two ticks
+    private static final Queue<List<ProfileUpdate>> pendingUpdates = new ConcurrentLinkedQueue<List<ProfileUpdate>>();
+
+    // Placeholder recorded while the packet handler is choosing which profile to send
+    private static final GameProfile SPAWN_IN_PROGRESS = new GameProfile(null, "pierceskin_spawn_pending");
+
+    // Worker pool for commands and storage work, ordered by job class (created when the server starts).
+    // Mojang requests run on the SkinFetchPipeline stages.
+    private static volatile SkinJobScheduler scheduler;
+
+    // Players still waiting for a viewer refresh because a tick's refresh budget ran out (server thread only)
+    private static final Set<EntityPlayerMP> deferredRefresh = new LinkedHashSet<EntityPlayerMP>();
+
+    // When the next automatic storage compaction is due (0 = not yet scheduled)
+    private static volatile long nextCompaction;
+
+    // Striped per-player locks. Held while a skin change is stored, cached and queued, so
+    // a /skin clear racing a fetch cannot leave storage and the profile disagreeing.
+    private static final Object[] playerLocks = new Object[64];
+
+    static {
+        for (int i = 0; i < playerLocks.length; i++) {
+            playerLocks[i] = new Object();
+        }
+    }
 
-    // Cache of fetched skin data (player UUID -> skin data)
-    private static final Map<String, SkinFetcher.SkinData> skinDataCache = new ConcurrentHashMap<String, SkinFetcher.SkinData>();
 
     /**
      * Set a player's skin by Minecraft username.
@@ -30,59 +73,138 @@ public class SkinManager {
      * @return true if successful
      */
     public static boolean setSkinByUsername(EntityPlayerMP player, String skinUsername) {
-        String playerUUID = player.getUniqueID().toString();
-        String playerName = player.getCommandSenderName();
+        return setSkinByUsername(player.getUniqueID().toString(), player.getCommandSenderName(), skinUsername);
+    }
 
+    /**
+     * Set a player's skin by Minecraft username, whether or not they are online.
+     * Blocks while the skin is fetched. An online player's profile changes on the next tick.
+     *
+     * @return true if successful
+     */
+    public static boolean setSkinByUsername(String playerUUID, String playerName, String skinUsername) {
         PierceSkinRestorer.LOGGER.info("Setting skin for " + playerName + " to " + skinUsername);
 
-        // Fetch skin data from Mojang
-        SkinFetcher.SkinData skinData = SkinFetcher.fetchSkinData(skinUsername);
+        // Fetch skin data from the shared cache or Mojang
+        SkinSnapshot snapshot = SkinFetchPipeline.fetchAndWait(skinUsername, SkinJobScheduler.JobClass.COMMAND, true);
 
-        if (skinData == null) {
+        if (snapshot == null) {
             PierceSkinRestorer.LOGGER.warn("Failed to fetch skin data for " + skinUsername);
+            if (SkinFetchPipeline.isRunning()) {
+                PendingSkinChanges.complete(playerUUID, PendingSkinChanges.Kind.SET, skinUsername);
+            } // Otherwise cut short by shutdown - it is resumed after the next start
             return false;
         }
 
-        // Store in persistent storage
-        SkinStorage.setSkin(playerUUID, playerName, skinUsername, SkinStorage.SkinType.MOJANG_USERNAME);
-
-        // Cache the skin data
-        skinDataCache.put(playerUUID, skinData);
+        synchronized (lockFor(playerUUID)) {
+            // Store in persistent storage
+            SkinStorage.setSkin(playerUUID, playerName, skinUsername, SkinStorage.SkinType.MOJANG_USERNAME);
+            PendingSkinChanges.complete(playerUUID, PendingSkinChanges.Kind.SET, skinUsername);
 
-        // Apply skin to player's actual GameProfile (so they see their own skin)
-        applySkinToProfile(player.getGameProfile(), skinData);
+            // Cache the skin data and hand the profile change to the server thread
+            cacheSkin(playerUUID, snapshot);
+            queueUpdate(playerUUID, snapshot);
+        }
 
-        // Create and cache modified profile for packet interception
-        GameProfile modifiedProfile = createModifiedProfile(player.getGameProfile(), skinData);
-        profileCache.put(playerUUID, modifiedProfile);
+        PierceSkinRestorer.LOGGER.info("Successfully set skin for " + playerName + " to " + skinUsername);
+        return true;
+    }
 
-        // Refresh skin for all viewers
-        SkinPacketHandler.refreshPlayerSkin(player);
+    /**
+     * Set a player's skin to a named preset. No network or file I/O, so it may run on the server
+     * thread: the entry is stored in memory and skins.json is written by a command job.
+     *
+     * @return false if there is no such preset
+     */
+    public static boolean setSkinPreset(EntityPlayerMP player, String presetName) {
+        SkinSnapshot snapshot = SkinPresets.get(presetName);
+        if (snapshot == null) {
+            return false;
+        }
 
-        PierceSkinRestorer.LOGGER.info("Successfully set skin for " + playerName + " to " + skinUsername);
+        String playerUUID = player.getUniqueID().toString();
+        synchronized (lockFor(playerUUID)) {
+            SkinStorage.setSkinUnsaved(playerUUID, player.getCommandSenderName(), presetName.toLowerCase(), SkinStorage.SkinType.PRESET);
+            cacheSkin(playerUUID, snapshot);
+            queueUpdate(playerUUID, snapshot);
+        }
+        // If the scheduler is gone the entry stays dirty and is written by the save at server stop
+        submit(SkinJobScheduler.JobClass.COMMAND, "save preset " + player.getCommandSenderName(), new Runnable() {
+            @Override
+            public void run() {
+                SkinStorage.flush();
+            }
+        });
         return true;
     }
 
+    /**
+     * Re-apply presets to the online players using them, e.g. after presets.json was edited.
+     * Reads every stored entry, waiting for the startup load - not for the server thread.
+     *
+     * @param presetName Preset that changed, or null for all presets
+     * @return number of stored players using the preset(s)
+     */
+    public static int reapplyPreset(String presetName) {
+        Map<String, SkinSnapshot> snapshots = new HashMap<String, SkinSnapshot>();
+        for (Map.Entry<String, SkinStorage.SkinData> stored : SkinStorage.getAllSkins().entrySet()) {
+            SkinStorage.SkinData data = stored.getValue();
+            if (data.skinType != SkinStorage.SkinType.PRESET
+                || (presetName != null && !presetName.equalsIgnoreCase(data.skinSource))) {
+                continue;
+            }
+            SkinSnapshot snapshot = SkinPresets.get(data.skinSource);
+            if (snapshot != null) {
+                snapshots.put(stored.getKey(), snapshot);
+            }
+        }
+        applyBatch(snapshots);
+        return snapshots.size();
+    }
+
+    /**
+     * The skin a player currently has: their custom skin if one is loaded, otherwise
+     * the textures on their own profile. Null if they have neither.
+     */
+    public static SkinSnapshot getCurrentSkin(EntityPlayerMP player) {
+        PlayerSession session = PlayerSessions.get(player);
+        SkinSnapshot snapshot = session != null ? session.getSkin() : null;
+        if (snapshot == null) {
+            snapshot = skinDataCache.get(player.getUniqueID().toString());
+        }
+        if (snapshot != null) {
+            return snapshot;
+        }
+        for (Property property : player.getGameProfile().getProperties().get("textures")) {
+            return new SkinSnapshot(property.getValue(), property.getSignature());
+        }
+        return null;
+    }
+
     /**
      * Clear a player's custom skin.
      *
      * @param player The player whose skin to clear
      */
     public static void clearSkin(EntityPlayerMP player) {
-        String playerUUID = player.getUniqueID().toString();
-
-        PierceSkinRestorer.LOGGER.info("Clearing skin for " + player.getCommandSenderName());
+        clearSkin(player.getUniqueID().toString(), player.getCommandSenderName());
+    }
 
-        // Remove from storage and caches
-        SkinStorage.removeSkin(playerUUID);
-        skinDataCache.remove(playerUUID);
-        profileCache.remove(playerUUID);
+    /**
+     * Clear a player's custom skin, whether or not they are online.
+     */
+    public static void clearSkin(String playerUUID, String playerName) {
+        PierceSkinRestorer.LOGGER.info("Clearing skin for " + playerName);
 
-        // Clear skin from player's actual GameProfile
-        clearSkinFromProfile(player.getGameProfile());
+        synchronized (lockFor(playerUUID)) {
+            // Remove from storage and caches, and drop a change resumed from the last shutdown
+            SkinStorage.removeSkin(playerUUID);
+            skinDataCache.remove(playerUUID);
+            PendingSkinChanges.cancel(playerUUID);
 
-        // Refresh skin for all viewers (will now show default)
-        SkinPacketHandler.refreshPlayerSkin(player);
+            // Profile is cleared and viewers refreshed on the next tick
+            queueUpdate(playerUUID, null);
+        }
     }
 
     /**
@@ -92,146 +214,617 @@ public class SkinManager {
      * @return true if a skin was found and reloaded
      */
     public static boolean reloadSkin(EntityPlayerMP player) {
-        String playerUUID = player.getUniqueID().toString();
+        return reloadSkin(player.getUniqueID().toString());
+    }
+
+    /**
+     * Reload a player's skin from stored data, whether or not they are online.
+     *
+     * @return true if a skin was found and reloaded
+     */
+    public static boolean reloadSkin(String playerUUID) {
         SkinStorage.SkinData storedData = SkinStorage.getSkin(playerUUID);
 
         if (storedData == null) {
+            PendingSkinChanges.complete(playerUUID, PendingSkinChanges.Kind.RELOAD, null);
             return false;
         }
 
-        // Re-fetch the skin
-        SkinFetcher.SkinData skinData = SkinFetcher.fetchSkinData(storedData.skinSource);
+        // Presets come from memory; anything else is re-fetched from Mojang
+        SkinSnapshot snapshot = storedData.skinType == SkinStorage.SkinType.PRESET
+            ? SkinPresets.get(storedData.skinSource)
+            : SkinFetchPipeline.fetchAndWait(storedData.skinSource, SkinJobScheduler.JobClass.COMMAND, false);
 
-        if (skinData == null) {
+        if (snapshot != null || SkinFetchPipeline.isRunning()) {
+            PendingSkinChanges.complete(playerUUID, PendingSkinChanges.Kind.RELOAD, null);
+        }
+        if (snapshot == null) {
             return false;
         }
 
-        // Update caches
-        skinDataCache.put(playerUUID, skinData);
+        synchronized (lockFor(playerUUID)) {
+            SkinStorage.SkinData current = SkinStorage.getSkin(playerUUID);
+            if (current == null) {
+                return false; // Cleared while fetching
+            }
+            if (!sameSource(current, storedData)) {
+                return true; // A newer skin was set while fetching and is already applied
+            }
 
-        // Apply skin to player's actual GameProfile
-        applySkinToProfile(player.getGameProfile(), skinData);
+            // Update caches and hand the profile change to the server thread
+            cacheSkin(playerUUID, snapshot);
+            queueUpdate(playerUUID, snapshot);
+        }
 
-        GameProfile modifiedProfile = createModifiedProfile(player.getGameProfile(), skinData);
-        profileCache.put(playerUUID, modifiedProfile);
+        return true;
+    }
 
-        // Refresh for viewers
-        SkinPacketHandler.refreshPlayerSkin(player);
+    /**
+     * Called during the login handshake, before the player is added to the world.
+     * Starts resolving the stored skin so the first spawn packet already carries it.
+     * May be called from a Netty thread.
+     *
+     * @param player The player who is logging in
+     */
+    public static void onPlayerLogin(EntityPlayerMP player) {
+        PlayerSession session = PlayerSessions.open(player);
+        if (!session.loginStarted.compareAndSet(false, true)) {
+            return;
+        }
 
-        return true;
+        // Inject now so the spawn packets for already-online players are rewritten too
+        SkinPacketHandler.injectPlayer(player);
+        resolveJoinSkin(session);
     }
 
     /**
      * Called when a player joins the server.
-     * Loads their stored skin if available.
+     * Loads their stored skin if the login handshake did not already do so.
      *
      * @param player The player who joined
      */
     public static void onPlayerJoin(final EntityPlayerMP player) {
-        final String playerUUID = player.getUniqueID().toString();
-        final String playerName = player.getCommandSenderName();
+        PierceSkinRestorer.LOGGER.info("Player joined: " + player.getCommandSenderName());
+        PlayerSession session = PlayerSessions.open(player);
 
-        PierceSkinRestorer.LOGGER.info("Player joined: " + playerName);
+        if (session.loginStarted.getAndSet(false)) {
+            return; // Handler injected and skin resolution started at login
+        }
 
         // Inject packet handler for this player first
         SkinPacketHandler.injectPlayer(player);
+        resolveJoinSkin(session);
+    }
+
+    /**
+     * Publish a joining player's stored skin, fetching it in the background on a cache miss.
+     */
+    static void resolveJoinSkin(final PlayerSession session) {
+        if (!SkinStorage.isLoaded()) {
+            // A miss while skins.json is still loading scans the file, so keep it off the Netty thread
+            boolean submitted = submit(SkinJobScheduler.JobClass.LOGIN, "lookup " + session.getName(), new Runnable() {
+                @Override
+                public void run() {
+                    resolveStoredSkin(session);
+                }
+            });
+            if (submitted) {
+                return;
+            }
+        }
+        resolveStoredSkin(session);
+    }
+
+    private static void resolveStoredSkin(final PlayerSession session) {
+        final String playerUUID = session.getUUID();
+        final String playerName = session.getName();
 
         // Check if this player has a stored skin
-        SkinStorage.SkinData storedData = SkinStorage.getSkin(playerUUID);
+        final SkinStorage.SkinData storedData = SkinStorage.getSkin(playerUUID);
+
+        if (storedData == null && SkinStorage.mayBeArchived(playerUUID)) {
+            // Dormant player - read their entry back from the archive off the calling thread
+            submit(SkinJobScheduler.JobClass.LOGIN, "restore " + playerName, new Runnable() {
+                @Override
+                public void run() {
+                    if (SkinStorage.restoreFromArchive(playerUUID) != null) {
+                        resolveStoredSkin(session);
+                    } else if (ModConfig.autoRestoreOwnSkin) {
+                        // Only the shard existed - a new player, who gets their own skin like any other
+                        OwnSkinRestore.request(session);
+                    }
+                }
+            });
+            return;
+        }
 
         if (storedData != null) {
-            PierceSkinRestorer.LOGGER.info("Loading stored skin for " + playerName + ": " + storedData.skinSource);
+            PierceSkinRestorer.LOGGER.debug("Loading stored skin for " + playerName + ": " + storedData.skinSource);
+            SkinStorage.touch(playerUUID);
+            JoinTracer.start(playerUUID, playerName);
+
+            if (storedData.skinType == SkinStorage.SkinType.PRESET) {
+                // Pinned in memory - never fetched, never expires
+                SkinSnapshot preset = SkinPresets.get(storedData.skinSource);
+                JoinTracer.markCacheLookup(playerUUID, preset != null);
+                if (preset != null) {
+                    publishStoredSkin(session, storedData, preset);
+                } else {
+                    PierceSkinRestorer.LOGGER.warn("Skin preset " + storedData.skinSource + " for " + playerName + " no longer exists");
+                    JoinTracer.failed(playerUUID);
+                }
+                return;
+            }
 
             // Check if we have cached skin data
-            SkinFetcher.SkinData skinData = skinDataCache.get(playerUUID);
+            SkinSnapshot snapshot = skinDataCache.get(playerUUID);
+            JoinTracer.markCacheLookup(playerUUID, snapshot != null);
+
+            if (snapshot == null) {
+                SkinMetrics.cacheMiss(SkinMetrics.Cache.SKIN_DATA);
 
-            if (skinData == null) {
                 // Need to fetch in background
-                final String skinSource = storedData.skinSource;
-                new Thread(new Runnable() {
+                SkinFetchPipeline.fetch(storedData.skinSource, SkinJobScheduler.JobClass.LOGIN, true, new SkinFetchPipeline.Callback() {
                     @Override
-                    public void run() {
-                        SkinFetcher.SkinData fetchedData = SkinFetcher.fetchSkinData(skinSource);
-                        if (fetchedData != null) {
-                            skinDataCache.put(playerUUID, fetchedData);
-
-                            // Apply skin to player's actual GameProfile
-                            applySkinToProfile(player.getGameProfile(), fetchedData);
+                    public void onStarted() {
+                        JoinTracer.mark(playerUUID, JoinTracer.Stage.JOB_STARTED);
+                    }
 
-                            GameProfile modifiedProfile = createModifiedProfile(player.getGameProfile(), fetchedData);
-                            profileCache.put(playerUUID, modifiedProfile);
+                    @Override
+                    public void onUuidResolved(String uuid) {
+                        JoinTracer.mark(playerUUID, JoinTracer.Stage.UUID_RESOLVED);
+                    }
 
-                            // Refresh skin - this sends packets which is safe from any thread
-                            // The packet sending internally handles thread safety
-                            SkinPacketHandler.refreshPlayerSkin(player);
+                    @Override
+                    public void onComplete(SkinSnapshot fetched) {
+                        if (fetched != null) {
+                            JoinTracer.mark(playerUUID, JoinTracer.Stage.PROFILE_FETCHED);
+                            publishStoredSkin(session, storedData, fetched);
+                        } else {
+                            JoinTracer.failed(playerUUID);
                         }
                     }
-                }, "SkinFetch-Join-" + playerName).start();
+                });
             } else {
-                // Already have cached data - apply to player's actual GameProfile
-                applySkinToProfile(player.getGameProfile(), skinData);
+                // Already have cached data - publish straight away
+                SkinMetrics.cacheHit(SkinMetrics.Cache.SKIN_DATA);
+                publishStoredSkin(session, storedData, snapshot);
+
+                if (isExpired(snapshot)) {
+                    revalidate(playerUUID, storedData.skinSource, snapshot);
+                }
+            }
+        } else if (ModConfig.autoRestoreOwnSkin) {
+            OwnSkinRestore.request(session);
+        }
+    }
+
+    private static boolean isExpired(SkinSnapshot snapshot) {
+        int ttlMinutes = ModConfig.skinCacheTtlMinutes;
+        return ttlMinutes > 0 && System.currentTimeMillis() - snapshot.getFetchedAt() > ttlMinutes * 60000L;
+    }
+
+    /**
+     * Re-fetch an expired cached skin in the background. The player keeps the cached skin
+     * meanwhile, and viewers are only refreshed if the texture actually changed.
+     */
+    private static void revalidate(final String playerUUID, String skinSource, final SkinSnapshot cached) {
+        SkinFetchPipeline.fetch(skinSource, SkinJobScheduler.JobClass.BACKGROUND, true, new SkinFetchPipeline.Callback() {
+            @Override
+            public void onComplete(SkinSnapshot fetched) {
+                if (fetched == null || !skinDataCache.replace(playerUUID, cached, fetched)) {
+                    return; // Keep the cached skin, or someone set a new one meanwhile
+                }
+                SkinStorage.setTextureInfo(playerUUID, fetched.getInfo());
+                // Mojang re-stamps unchanged skins, so compare the decoded skin rather than the raw value
+                if (!fetched.sameTexture(cached)) {
+                    queueUpdate(playerUUID, fetched);
+                } else {
+                    SkinMetrics.increment(SkinMetrics.Counter.UNCHANGED_REFRESHES_SKIPPED);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cache and publish a join skin, unless the player set or cleared their skin since
+     * the stored entry was read - the newer change wins.
+     */
+    private static void publishStoredSkin(PlayerSession session, SkinStorage.SkinData storedData, SkinSnapshot snapshot) {
+        synchronized (lockFor(session.getUUID())) {
+            if (sameSource(SkinStorage.getSkin(session.getUUID()), storedData)) {
+                cacheSkin(session.getUUID(), snapshot);
+                publishJoinSkin(session, snapshot);
+            }
+        }
+    }
 
-                GameProfile modifiedProfile = createModifiedProfile(player.getGameProfile(), skinData);
-                profileCache.put(playerUUID, modifiedProfile);
+    /**
+     * Publish the skin of a player's own name, unless they set a skin since they joined
+     * or have already left. Used by OwnSkinRestore.
+     */
+    static void publishOwnSkin(PlayerSession session, SkinSnapshot snapshot) {
+        synchronized (lockFor(session.getUUID())) {
+            if (SkinStorage.getSkin(session.getUUID()) == null && PlayerSessions.get(session.getId()) == session) {
+                publishJoinSkin(session, snapshot);
             }
         }
     }
 
+    /**
+     * Publish a join skin for packet interception immediately, and leave only the
+     * live GameProfile update (plus a refresh, if a viewer already saw the default skin)
+     * to the server thread.
+     */
+    private static void publishJoinSkin(PlayerSession session, SkinSnapshot snapshot) {
+        boolean staleSeen = publishProfile(session, snapshot);
+        JoinTracer.mark(session.getUUID(), JoinTracer.Stage.PROFILE_PUBLISHED);
+        pendingUpdates.offer(Collections.singletonList(new ProfileUpdate(session.getUUID(), snapshot, false, staleSeen)));
+    }
+
     /**
      * Called when a player leaves the server.
      */
     public static void onPlayerLeave(EntityPlayerMP player) {
+        String playerUUID = player.getUniqueID().toString();
+        SkinStorage.touch(playerUUID);
+        deferredRefresh.remove(player);
+        JoinTracer.left(playerUUID);
         SkinPacketHandler.removePlayer(player);
+        PlayerSessions.close(player); // Releases the spawn profile and refresh state
+    }
+
+    /**
+     * Queue a profile change for the server thread. It is dropped if the player is offline by then.
+     * Safe to call from any thread.
+     *
+     * @param playerUUID The player whose profile should change
+     * @param snapshot The skin to apply, or null to clear the custom skin
+     */
+    private static void queueUpdate(String playerUUID, SkinSnapshot snapshot) {
+        pendingUpdates.offer(Collections.singletonList(new ProfileUpdate(playerUUID, snapshot, true, false)));
+    }
+
+    /**
+     * Cache and apply the results of a bulk operation, each player under their lock.
+     * Players who are online get their profiles updated together on the next tick,
+     * with a single batched viewer refresh. Safe to call from any thread.
+     *
+     * @param snapshots Player UUID -> fetched skin
+     */
+    static void applyBatch(Map<String, SkinSnapshot> snapshots) {
+        List<ProfileUpdate> updates = new ArrayList<ProfileUpdate>(snapshots.size());
+        for (Map.Entry<String, SkinSnapshot> entry : snapshots.entrySet()) {
+            synchronized (lockFor(entry.getKey())) {
+                addBatchUpdate(updates, entry.getKey(), entry.getValue());
+            }
+        }
+        if (!updates.isEmpty()) {
+            pendingUpdates.offer(updates);
+        }
+    }
+
+    /**
+     * Store and apply the results of a bulk operation with a single save and one batch of
+     * profile updates. Each player is committed under their lock and skipped if their stored
+     * entry changed since the operation read it, so a /skin set or /skin clear made meanwhile wins.
+     *
+     * @param stored Player UUID -> new stored entry. An existing entry only takes its skin and update time
+     * @param readAt Player UUID -> stored entry when the operation started, no mapping if none
+     * @param snapshots Player UUID -> fetched skin
+     * @return the number of players committed
+     */
+    static int commitBatch(Map<String, SkinStorage.SkinData> stored, Map<String, SkinStorage.SkinData> readAt,
+                           Map<String, SkinSnapshot> snapshots) {
+        List<SkinStorage.SkinData> committed = new ArrayList<SkinStorage.SkinData>(stored.size());
+        List<ProfileUpdate> updates = new ArrayList<ProfileUpdate>(stored.size());
+        for (Map.Entry<String, SkinStorage.SkinData> entry : stored.entrySet()) {
+            String playerUUID = entry.getKey();
+            synchronized (lockFor(playerUUID)) {
+                SkinStorage.SkinData current = SkinStorage.getSkin(playerUUID);
+                SkinStorage.SkinData earlier = readAt.get(playerUUID);
+                if (earlier == null ? current != null : !sameSource(current, earlier)) {
+                    continue; // Set or cleared while the operation ran
+                }
+                SkinStorage.SkinData data = entry.getValue();
+                if (current != null) {
+                    // Only the skin changes: keep when the player was last seen and what they wear
+                    data = current.copy();
+                    data.skinSource = entry.getValue().skinSource;
+                    data.skinType = entry.getValue().skinType;
+                    data.lastUpdated = entry.getValue().lastUpdated;
+                }
+                SkinStorage.putSkin(playerUUID, data);
+                addBatchUpdate(updates, playerUUID, snapshots.get(playerUUID));
+                committed.add(data);
+            }
+        }
+
+        if (!committed.isEmpty()) {
+            SkinStorage.indexSources(committed);
+            SkinStorage.save();
+        }
+        if (!updates.isEmpty()) {
+            pendingUpdates.offer(updates);
+        }
+        return committed.size();
+    }
+
+    /**
+     * Cache one player's bulk result and add a profile update for it if the texture changed.
+     * The caller holds the player's lock.
+     */
+    private static void addBatchUpdate(List<ProfileUpdate> updates, String playerUUID, SkinSnapshot snapshot) {
+        SkinSnapshot previous = skinDataCache.put(playerUUID, snapshot);
+        SkinStorage.setTextureInfo(playerUUID, snapshot.getInfo());
+        if (!snapshot.sameTexture(previous)) {
+            updates.add(new ProfileUpdate(playerUUID, snapshot, true, false, true));
+        } else {
+            SkinMetrics.increment(SkinMetrics.Counter.UNCHANGED_REFRESHES_SKIPPED);
+        }
+    }
+
+    /**
+     * Apply all queued profile changes, then refresh changed players in one pass.
+     * At most maxRefreshesPerTick players are refreshed per tick; the rest carry over, oldest first.
+     * Must only be called from the server thread, at the start of a tick.
+     */
+    public static void processPendingUpdates() {
+        if (pendingUpdates.isEmpty() && deferredRefresh.isEmpty()) {
+            return;
+        }
+
+        Set<EntityPlayerMP> toRefresh = deferredRefresh;
+
+        List<ProfileUpdate> batch;
+        while ((batch = pendingUpdates.poll()) != null) {
+            for (ProfileUpdate update : batch) {
+                // Only players who are online need a profile change
+                PlayerSession session = PlayerSessions.get(update.playerUUID);
+                if (session == null) {
+                    continue;
+                }
+                if (update.batched && skinDataCache.get(update.playerUUID) != update.snapshot) {
+                    continue; // Set or cleared after the batch was queued; that change has its own update
+                }
+                EntityPlayerMP player = session.getPlayer();
+                if (player != null && player.playerNetServerHandler == null) {
+                    continue; // Player left before the update was applied
+                }
+
+                try {
+                    boolean refresh = update.publish ? publishProfile(session, update.snapshot) : update.refresh;
+                    session.setSkin(update.snapshot);
+                    if (player == null) {
+                        continue; // Detached session: no live profile or viewers to update
+                    }
+
+                    // Keep the player's actual GameProfile in sync with what viewers are sent
+                    if (update.snapshot != null) {
+                        applySkinToProfile(player.getGameProfile(), update.snapshot);
+                    } else {
+                        clearSkinFromProfile(player.getGameProfile());
+                    }
+                    if (!update.publish) {
+                        JoinTracer.mark(update.playerUUID, JoinTracer.Stage.PROFILE_APPLIED);
+                    }
+
+                    // Only respawn the player for viewers that were sent an outdated profile
+                    if (refresh) {
+                        toRefresh.add(player);
+                    }
+                } catch (Exception e) {
+                    PierceSkinRestorer.LOGGER.error("Failed to apply skin update for " + session.getName(), e);
+                }
+            }
+        }
+
+        if (toRefresh.isEmpty()) {
+            return;
+        }
+
+        int budget = ModConfig.maxRefreshesPerTick;
+        List<EntityPlayerMP> thisTick = new ArrayList<EntityPlayerMP>(Math.min(budget, toRefresh.size()));
+        Iterator<EntityPlayerMP> it = toRefresh.iterator();
+        while (it.hasNext() && thisTick.size() < budget) {
+            thisTick.add(it.next());
+            it.remove();
+        }
+        SkinPacketHandler.refreshPlayerSkins(thisTick);
+    }
+
+    /**
+     * Swap in a freshly built profile for packet interception.
+     * Only reads the immutable id and name of the live profile, so any thread may call this.
+     *
+     * @return true if a viewer may already have been sent a different profile for this player
+     */
+    private static boolean publishProfile(PlayerSession session, SkinSnapshot snapshot) {
+        GameProfile current;
+        if (snapshot != null) {
+            current = snapshot.createProfile(session.getGameProfile());
+            session.setProfile(current);
+        } else {
+            current = session.getClearedProfile();
+            session.setProfile(current);
+        }
+
+        GameProfile sent = session.lastSpawned.get();
+        return sent != null && sent != current;
+    }
+
+    /**
+     * Pick the profile to put into an outgoing spawn packet, and remember it
+     * so later skin changes know whether viewers need a refresh.
+     * Called from Netty event loops.
+     *
+     * @param originalProfile The profile in the spawn packet
+     * @return Modified profile with skin, a copy of the player's own profile if they have no custom skin,
+     *         or original if they are not one of our players
+     */
+    public static GameProfile getSpawnProfile(GameProfile originalProfile) {
+        if (originalProfile == null) {
+            return null;
+        }
+
+        PlayerSession session = PlayerSessions.get(originalProfile.getId());
+        if (session == null) {
+            SkinMetrics.cacheMiss(SkinMetrics.Cache.PROFILE);
+            return originalProfile; // Not one of our players, e.g. a fake player
+        }
+
+        // Mark before reading, so a concurrent publish always sees this spawn as possibly stale
+        session.lastSpawned.set(SPAWN_IN_PROGRESS);
+        GameProfile sent = getModifiedProfile(session, originalProfile);
+        session.lastSpawned.compareAndSet(SPAWN_IN_PROGRESS, sent);
+        if (sent != session.getDefaultProfile()) {
+            JoinTracer.spawnSent(session.getUUID());
+        }
+        return sent;
     }
 
     /**
      * Get a modified GameProfile with skin data injected.
-     * Called by the packet handler when sending spawn packets.
+     * Side-effect free; the packet handler goes through getSpawnProfile.
      *
      * @param originalProfile The original profile
-     * @return Modified profile with skin, or original if no custom skin
+     * @return Modified profile with skin, a copy of the player's own profile if they have no custom skin,
+     *         or original if they are not one of our players
      */
     public static GameProfile getModifiedProfile(GameProfile originalProfile) {
         if (originalProfile == null) {
             return null;
         }
 
-        String uuid = originalProfile.getId().toString();
+        return getModifiedProfile(PlayerSessions.get(originalProfile.getId()), originalProfile);
+    }
 
-        // Check if we have a cached modified profile
-        GameProfile cachedProfile = profileCache.get(uuid);
-        if (cachedProfile != null) {
-            return cachedProfile;
+    private static GameProfile getModifiedProfile(PlayerSession session, GameProfile originalProfile) {
+        GameProfile modified = session != null ? session.getProfile() : null;
+        if (modified != null) {
+            SkinMetrics.cacheHit(SkinMetrics.Cache.PROFILE);
+            return modified;
         }
+        SkinMetrics.cacheMiss(SkinMetrics.Cache.PROFILE);
 
-        // Check if we have skin data but no profile yet
-        SkinFetcher.SkinData skinData = skinDataCache.get(uuid);
-        if (skinData != null) {
-            GameProfile modified = createModifiedProfile(originalProfile, skinData);
-            profileCache.put(uuid, modified);
-            return modified;
+        // No custom skin for this player (or it has not been applied yet). Never the live
+        // profile: the server thread may be changing its textures while Netty writes it.
+        return session != null ? session.getDefaultProfile() : originalProfile;
+    }
+
+    /**
+     * Start a compaction if compactionIntervalMinutes has passed since the last one.
+     * Server thread only; called every tick.
+     */
+    public static void maybeCompact() {
+        long now = System.currentTimeMillis();
+        if (nextCompaction == 0) {
+            // Not straight after startup, when the workers are busy with logins
+            nextCompaction = now + ModConfig.compactionIntervalMinutes * 60000L;
+        } else if (now >= nextCompaction) {
+            nextCompaction = now + ModConfig.compactionIntervalMinutes * 60000L;
+            compactStorage(null);
         }
+    }
+
+    /**
+     * Archive dormant skin entries as a background job and drop their cached skins.
+     * Server thread only.
+     *
+     * @param callback Receives the number of archived entries, or null
+     * @return false if the scheduler has been shut down
+     */
+    public static boolean compactStorage(final CompactionCallback callback) {
+        final Set<String> online = new HashSet<String>();
+        for (PlayerSession session : PlayerSessions.all()) {
+            online.add(session.getUUID());
+        }
+        final int retentionDays = ModConfig.retentionDays;
+        return submit(SkinJobScheduler.JobClass.BACKGROUND, "compact storage", new Runnable() {
+            @Override
+            public void run() {
+                Map<String, SkinStorage.SkinData> archived = SkinStorage.compact(retentionDays, online);
+                for (String playerUUID : archived.keySet()) {
+                    skinDataCache.remove(playerUUID);
+                }
+                OwnSkinRestore.evictIdle(retentionDays);
+                if (callback != null) {
+                    callback.onComplete(archived.size());
+                }
+            }
+        });
+    }
+
+    public interface CompactionCallback {
+        void onComplete(int archived);
+    }
+
+    /**
+     * Copy of the fetched-skin cache (player UUID -> skin), for snapshot export.
+     */
+    static Map<String, SkinSnapshot> getCachedSkins() {
+        return new HashMap<String, SkinSnapshot>(skinDataCache);
+    }
+
+    /**
+     * Warm the fetched-skin cache, e.g. from a snapshot. Never replaces a skin already cached.
+     *
+     * @return true if the skin was added
+     */
+    static boolean seedSkinCache(String playerUUID, SkinSnapshot snapshot) {
+        if (skinDataCache.putIfAbsent(playerUUID, snapshot) != null) {
+            return false;
+        }
+        SkinStorage.setTextureInfo(playerUUID, snapshot.getInfo());
+        return true;
+    }
+
+    /**
+     * Cache a player's skin and record what it shows with their stored entry.
+     */
+    private static void cacheSkin(String playerUUID, SkinSnapshot snapshot) {
+        skinDataCache.put(playerUUID, snapshot);
+        SkinStorage.setTextureInfo(playerUUID, snapshot.getInfo());
+    }
+
+    /**
+     * Put a modified profile straight into the spawn-packet cache.
+     * Only for benchmarks and harnesses that run without a server, through their hook classes.
+     */
+    static void seedProfile(String playerUUID, GameProfile profile) {
+        PlayerSessions.openDetached(UUID.fromString(playerUUID), profile.getName()).setProfile(profile);
+    }
 
-        // No custom skin for this player
-        return originalProfile;
+    /**
+     * Number of players with a fetched skin in memory.
+     */
+    public static int getCachedSkinCount() {
+        return skinDataCache.size();
+    }
+
+    private static Object lockFor(String playerUUID) {
+        return playerLocks[(playerUUID.hashCode() & 0x7fffffff) % playerLocks.length];
+    }
+
+    /**
+     * Whether a stored entry still names the same skin as one read earlier.
+     */
+    private static boolean sameSource(SkinStorage.SkinData current, SkinStorage.SkinData earlier) {
+        return current != null && current.skinType == earlier.skinType
+            && current.skinSource.equalsIgnoreCase(earlier.skinSource);
     }
 
     /**
      * Apply skin data directly to a player's GameProfile.
      * This modifies the profile in-place so the player sees their own skin.
+     * Server thread only.
      */
-    private static void applySkinToProfile(GameProfile profile, SkinFetcher.SkinData skinData) {
+    private static void applySkinToProfile(GameProfile profile, SkinSnapshot snapshot) {
         // Remove existing textures property
         profile.getProperties().removeAll("textures");
 
         // Add new skin texture property
-        if (skinData.textureSignature != null) {
-            profile.getProperties().put("textures",
-                new Property("textures", skinData.textureValue, skinData.textureSignature));
-        } else {
-            profile.getProperties().put("textures",
-                new Property("textures", skinData.textureValue));
-        }
+        profile.getProperties().put("textures", snapshot.toProperty());
 
         PierceSkinRestorer.LOGGER.debug("Applied skin to GameProfile for " + profile.getName());
     }
@@ -239,6 +832,7 @@ public class SkinManager {
     /**
      * Clear skin data from a player's GameProfile.
      * This removes the custom texture property.
+     * Server thread only.
      */
     private static void clearSkinFromProfile(GameProfile profile) {
         profile.getProperties().removeAll("textures");
@@ -246,24 +840,162 @@ public class SkinManager {
     }
 
     /**
-     * Create a new GameProfile with skin texture injected.
+     * Run skin work on the shared worker pool.
+     *
+     * @return false if the scheduler has been shut down
      */
-    private static GameProfile createModifiedProfile(GameProfile original, SkinFetcher.SkinData skinData) {
-        // Create new profile with same ID and name
-        GameProfile newProfile = new GameProfile(original.getId(), original.getName());
+    public static boolean submit(SkinJobScheduler.JobClass jobClass, String description, Runnable task) {
+        SkinJobScheduler current = scheduler;
+        return current != null && current.submit(jobClass, description, task);
+    }
+
+    public static SkinJobScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Start the worker pool. Called when the server starts.
+     */
+    public static void start() {
+        if (scheduler == null) {
+            scheduler = new SkinJobScheduler("SkinWorker", ModConfig.workerThreads, ModConfig.jobStarvationMillis);
+        }
+        SkinFetchPipeline.start();
+        resumePendingChanges();
+    }
+
+    /**
+     * Queue the skin changes left unfinished by the last shutdown, highest job class first.
+     */
+    private static void resumePendingChanges() {
+        List<PendingSkinChanges.Change> changes = PendingSkinChanges.load();
+        if (changes.isEmpty()) {
+            return;
+        }
+        PierceSkinRestorer.LOGGER.info("Resuming " + changes.size() + " skin changes left unfinished by the last shutdown");
+        for (final PendingSkinChanges.Change change : changes) {
+            change.attempts++;
+            submit(change.jobClass, "resume " + change.playerName, new Runnable() {
+                @Override
+                public void run() {
+                    resumeChange(change);
+                }
+            });
+        }
+    }
+
+    private static void resumeChange(PendingSkinChanges.Change change) {
+        if (!PendingSkinChanges.isCurrent(change)) {
+            return; // The player asked for something else since
+        }
 
-        // Add our skin texture property
-        // Note: We only set textures property - this is all that's needed for skin display
-        // Avoiding putAll() due to Guava classloader conflicts in GTNH
-        if (skinData.textureSignature != null) {
-            newProfile.getProperties().put("textures",
-                new Property("textures", skinData.textureValue, skinData.textureSignature));
+        String skinSource = change.skinSource;
+        SkinStorage.SkinData stored = null;
+        SkinSnapshot snapshot;
+        if (change.kind == PendingSkinChanges.Kind.RELOAD) {
+            stored = SkinStorage.getSkin(change.playerUUID);
+            if (stored == null) {
+                PendingSkinChanges.complete(change);
+                return;
+            }
+            skinSource = stored.skinSource;
+            snapshot = stored.skinType == SkinStorage.SkinType.PRESET
+                ? SkinPresets.get(skinSource)
+                : SkinFetchPipeline.fetchAndWait(skinSource, change.jobClass, false);
         } else {
-            newProfile.getProperties().put("textures",
-                new Property("textures", skinData.textureValue));
+            snapshot = SkinFetchPipeline.fetchAndWait(skinSource, change.jobClass, true);
+        }
+
+        if (snapshot == null) {
+            if (SkinFetchPipeline.isRunning()) {
+                PierceSkinRestorer.LOGGER.warn("Could not resume skin change for " + change.playerName + ": failed to fetch " + skinSource);
+                PendingSkinChanges.complete(change);
+            }
+            return;
         }
+        synchronized (lockFor(change.playerUUID)) {
+            if (!PendingSkinChanges.isCurrent(change)) {
+                return; // Set or cleared since it was resumed
+            }
+            if (change.kind == PendingSkinChanges.Kind.SET) {
+                SkinStorage.setSkin(change.playerUUID, change.playerName, skinSource, SkinStorage.SkinType.MOJANG_USERNAME);
+            } else if (!sameSource(SkinStorage.getSkin(change.playerUUID), stored)) {
+                PendingSkinChanges.complete(change);
+                return; // Set or cleared while fetching
+            }
+            // Applied on the next tick if the player is online, otherwise used at their next join
+            applyBatch(Collections.singletonMap(change.playerUUID, snapshot));
+        }
+        PendingSkinChanges.complete(change);
+        PierceSkinRestorer.LOGGER.info("Resumed skin change for " + change.playerName + ": " + skinSource);
+    }
 
-        return newProfile;
+    /**
+     * Push reloaded config values into running components.
+     */
+    public static void applyConfig() {
+        SkinJobScheduler current = scheduler;
+        if (current != null) {
+            current.setWorkerCount(ModConfig.workerThreads);
+            current.setStarvationMillis(ModConfig.jobStarvationMillis);
+        }
+        SkinFetchPipeline.applyConfig();
+        SkinFetcher.applyConfig();
+    }
+
+    /**
+     * Stop the worker pool. Called when the server stops.
+     * Login and command work gets up to shutdownDrainSeconds to finish; skin changes still
+     * unfinished after that (queued, or stuck on a slow request) are saved and resumed at the next start.
+     */
+    public static void shutdown() {
+        // A running batch would keep queuing work while we drain
+        SkinBatch batch = SkinBatch.getActive();
+        if (batch != null) {
+            batch.cancel();
+        }
+        drain(ModConfig.shutdownDrainSeconds * 1000L);
+
+        SkinJobScheduler current = scheduler;
+        scheduler = null;
+        if (current != null) {
+            current.shutdown();
+        }
+        SkinFetchPipeline.shutdown();
+        OwnSkinRestore.clear();
+        PlayerSessions.clear();
+        PendingSkinChanges.save();
+    }
+
+    /**
+     * Wait for queued and running login and command jobs on every pool. Never waits past the timeout,
+     * so a hung HTTP call cannot hold up shutdown.
+     */
+    private static void drain(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        SkinJobScheduler[] pools = {scheduler, SkinFetchPipeline.getResolveStage(), SkinFetchPipeline.getTextureStage()};
+        try {
+            while (true) {
+                // Jobs hand work between pools, so only a pass where every pool was drained counts
+                boolean drained = true;
+                for (SkinJobScheduler pool : pools) {
+                    if (pool != null && !pool.awaitDrained(Math.max(0, deadline - System.currentTimeMillis()),
+                        SkinJobScheduler.JobClass.LOGIN, SkinJobScheduler.JobClass.COMMAND)) {
+                        drained = false;
+                    }
+                }
+                if (drained) {
+                    return;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    PierceSkinRestorer.LOGGER.warn("Skin jobs still running after " + timeoutMillis
+                        + "ms; unfinished skin changes will be resumed at the next start");
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -272,4 +1004,28 @@ public class SkinManager {
     public static boolean hasCustomSkin(String playerUUID) {
         return SkinStorage.hasSkin(playerUUID);
     }
+
+    /**
+     * A queued profile change. Immutable once created.
+     */
+    private static final class ProfileUpdate {
+        final String playerUUID;     // Looked up in PlayerSessions on the server thread
+        final SkinSnapshot snapshot; // null clears the custom skin
+
+        final boolean publish;       // false if the profile was already published off-thread
+        final boolean refresh;       // only used when publish is false
+        final boolean batched;       // dropped if the snapshot is no longer the player's cached skin
+
+        ProfileUpdate(String playerUUID, SkinSnapshot snapshot, boolean publish, boolean refresh) {
+            this(playerUUID, snapshot, publish, refresh, false);
+        }
+
+        ProfileUpdate(String playerUUID, SkinSnapshot snapshot, boolean publish, boolean refresh, boolean batched) {
+            this.playerUUID = playerUUID;
+            this.snapshot = snapshot;
+            this.publish = publish;
+            this.refresh = refresh;
+            this.batched = batched;
+        }
+    }
 }
@@ -0,0 +1,167 @@
+package com.pierce.skinrestorer.skin;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.pierce.skinrestorer.PierceSkinRestorer;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Admin-defined named skins, stored with their signed texture in presets.json.
+ *
+ * Presets are held in memory for the life of the server and never evicted, so
+ * applying one needs no Mojang request. The file can be written by hand (for example
+ * copied from another server), or filled with /skin preset capture.
+ */
+public class SkinPresets {
+
+    private static File presetsFile;
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    // Lower-case preset name -> skin
+    private static volatile Map<String, SkinSnapshot> presets = new ConcurrentHashMap<String, SkinSnapshot>();
+    private static final NameIndex nameIndex = new NameIndex();
+
+    public static void init(File dataDir) {
+        presetsFile = new File(dataDir, "presets.json");
+        load();
+    }
+
+    /**
+     * Re-read presets.json, replacing all presets in memory.
+     *
+     * @return number of presets loaded
+     */
+    public static synchronized int load() {
+        Map<String, SkinSnapshot> loaded = new ConcurrentHashMap<String, SkinSnapshot>();
+        if (presetsFile == null || !presetsFile.exists()) {
+            presets = loaded;
+            nameIndex.replaceAll(loaded.keySet());
+            return 0;
+        }
+
+        FileReader reader = null;
+        try {
+            reader = new FileReader(presetsFile);
+            Type type = new TypeToken<Map<String, PresetData>>() {}.getType();
+            Map<String, PresetData> data = GSON.fromJson(reader, type);
+
+            if (data != null) {
+                for (Map.Entry<String, PresetData> entry : data.entrySet()) {
+                    PresetData preset = entry.getValue();
+                    if (preset == null || preset.value == null) {
+                        PierceSkinRestorer.LOGGER.warn("Skipping preset " + entry.getKey() + " with no texture value");
+                        continue;
+                    }
+                    if (preset.signature == null) {
+                        PierceSkinRestorer.LOGGER.warn("Preset " + entry.getKey() + " has no signature - clients may ignore it");
+                    }
+                    loaded.put(entry.getKey().toLowerCase(), new SkinSnapshot(preset.value, preset.signature));
+                }
+            }
+            presets = loaded;
+            nameIndex.replaceAll(loaded.keySet());
+            PierceSkinRestorer.LOGGER.info("Loaded " + loaded.size() + " skin presets");
+        } catch (Exception e) {
+            // Keep the presets we already have rather than dropping them all
+            PierceSkinRestorer.LOGGER.error("Failed to load presets.json", e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+        return presets.size();
+    }
+
+    private static synchronized void save() {
+        if (presetsFile == null) {
+            return;
+        }
+
+        Map<String, PresetData> data = new LinkedHashMap<String, PresetData>();
+        for (String name : getNames()) {
+            SkinSnapshot snapshot = presets.get(name);
+            PresetData preset = new PresetData();
+            preset.value = snapshot.getTextureValue();
+            preset.signature = snapshot.getTextureSignature();
+            data.put(name, preset);
+        }
+
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(presetsFile);
+            GSON.toJson(data, writer);
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.error("Failed to save presets.json", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    public static SkinSnapshot get(String name) {
+        return presets.get(name.toLowerCase());
+    }
+
+    /**
+     * Add or replace a preset and save it.
+     */
+    public static void put(String name, SkinSnapshot snapshot) {
+        presets.put(name.toLowerCase(), snapshot);
+        nameIndex.add(name.toLowerCase());
+        save();
+    }
+
+    /**
+     * @return true if the preset existed
+     */
+    public static boolean remove(String name) {
+        boolean removed = presets.remove(name.toLowerCase()) != null;
+        if (removed) {
+            nameIndex.remove(name);
+            save();
+        }
+        return removed;
+    }
+
+    /**
+     * Preset names for tab completion.
+     */
+    public static NameIndex getNameIndex() {
+        return nameIndex;
+    }
+
+    /**
+     * Preset names in alphabetical order.
+     */
+    public static List<String> getNames() {
+        List<String> names = new ArrayList<String>(presets.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * On-disk form of a preset.
+     */
+    public static class PresetData {
+        public String value;      // Base64 encoded texture data
+        public String signature;  // Mojang's signature
+    }
+}
@@ -0,0 +1,93 @@
+package com.pierce.skinrestorer.skin;
+
+import com.mojang.authlib.GameProfile;
+import com.mojang.authlib.properties.Property;
+
+/**
+ * Immutable copy of a player's skin texture.
+ * Safe to hand between fetch threads, the server thread and Netty event loops.
+ */
+public final class SkinSnapshot {
+
+    private final String textureValue;      // Base64 encoded texture data
+    private final String textureSignature;  // Mojang's signature, may be null
+    private final String sourceUUID;        // Mojang UUID the texture belongs to, may be null
+    private final long fetchedAt;
+    private final TextureInfo info;         // Decoded texture metadata, null if the value could not be decoded
+
+    public SkinSnapshot(String textureValue, String textureSignature) {
+        this(textureValue, textureSignature, null, System.currentTimeMillis());
+    }
+
+    /**
+     * @param sourceUUID Mojang UUID (without dashes) of the account the texture came from, or null
+     * @param fetchedAt When the texture was fetched from Mojang, for snapshots restored from a cache
+     */
+    public SkinSnapshot(String textureValue, String textureSignature, String sourceUUID, long fetchedAt) {
+        if (textureValue == null) {
+            throw new IllegalArgumentException("textureValue");
+        }
+        this.textureValue = textureValue;
+        this.textureSignature = textureSignature;
+        this.sourceUUID = sourceUUID;
+        this.fetchedAt = fetchedAt;
+        this.info = TextureInfo.decode(textureValue);
+    }
+
+    public static SkinSnapshot of(SkinFetcher.SkinData data) {
+        return data == null ? null
+            : new SkinSnapshot(data.textureValue, data.textureSignature, data.uuid, System.currentTimeMillis());
+    }
+
+    public String getTextureValue() {
+        return textureValue;
+    }
+
+    public String getTextureSignature() {
+        return textureSignature;
+    }
+
+    public String getSourceUUID() {
+        return sourceUUID;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public TextureInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * Whether another snapshot shows the same skin. Compares the decoded skin hash, model
+     * and cape, so a re-fetch that only changed Mojang's timestamp counts as the same.
+     */
+    public boolean sameTexture(SkinSnapshot other) {
+        if (other == null) {
+            return false;
+        }
+        if (info != null && other.info != null) {
+            return info.sameAppearance(other.info);
+        }
+        return textureValue.equals(other.textureValue);
+    }
+
+    public Property toProperty() {
+        if (textureSignature != null) {
+            return new Property("textures", textureValue, textureSignature);
+        }
+        return new Property("textures", textureValue);
+    }
+
+    /**
+     * Build a fresh GameProfile carrying only this texture.
+     * The result is never mutated after creation, so it can be published to readers without locking.
+     */
+    public GameProfile createProfile(GameProfile original) {
+        GameProfile profile = new GameProfile(original.getId(), original.getName());
+        // Avoiding putAll() due to Guava classloader conflicts in GTNH
+        profile.getProperties().put("textures", toProperty());
+        return profile;
+    }
+}
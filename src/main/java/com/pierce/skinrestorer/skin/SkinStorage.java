@@ -3,29 +3,78 @@ package com.pierce.skinrestorer.skin;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import com.pierce.skinrestorer.PierceSkinRestorer;
+import com.pierce.skinrestorer.metrics.SkinEvents;
+import com.pierce.skinrestorer.metrics.SkinMetrics;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Server-side storage for player skin preferences.
  * Persists to JSON file.
+ *
+ * skins.json is read in the background at startup; entries needed before that finishes
+ * are read from the file one at a time.
+ *
+ * Only recently seen players are kept in skins.json and in memory. Entries for players
+ * not seen for retentionDays are moved to the archive by compact(), and moved back the
+ * next time that player logs in.
  */
 public class SkinStorage {
 
     private static File dataDir;
     private static File skinsFile;
+    private static SkinArchive archive;
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
     // Map of player UUID -> SkinData
     private static Map<String, SkinData> skinMap = new ConcurrentHashMap<String, SkinData>();
 
+    // Skin names chosen by any stored player, for tab completion. Only grows until the next load.
+    private static final NameIndex sourceNames = new NameIndex();
+
+    // Skin hash -> UUIDs of stored players wearing it (see TextureInfo); guarded by itself
+    private static final Map<String, Set<String>> wearers = new HashMap<String, Set<String>>();
+
+    // Set when entries changed without a save; written by the next save or flush()
+    private static volatile boolean dirty;
+
+    // Files at least this large are parsed on several threads
+    private static final int PARALLEL_PARSE_BYTES = 1024 * 1024;
+    private static final int MAX_PARSE_THREADS = 4;
+    private static final Type MAP_TYPE = new TypeToken<Map<String, SkinData>>() {}.getType();
+
+    // Startup load state; loadLock also orders file entries against changes made while loading
+    private static final Object loadLock = new Object();
+    private static volatile boolean loaded = true;
+    private static volatile long loadStartedAt;
+    private static volatile long loadMillis;
+    private static final AtomicInteger onDemandLookups = new AtomicInteger();
+    private static final Set<String> removedWhileLoading = new HashSet<String>();
+    private static final Set<String> missingWhileLoading =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     public static void init(File dir) {
         dataDir = dir;
         if (!dataDir.exists()) {
@@ -33,30 +82,208 @@ public class SkinStorage {
         }
 
         skinsFile = new File(dataDir, "skins.json");
-        load();
+        archive = new SkinArchive(dataDir);
+        startBackgroundLoad();
     }
 
-    public static void load() {
+    /**
+     * Read skins.json on a background thread so server startup does not wait for it.
+     * Until it finishes, getSkin() looks up single entries straight from the file.
+     */
+    private static void startBackgroundLoad() {
         if (skinsFile == null || !skinsFile.exists()) {
             skinMap = new ConcurrentHashMap<String, SkinData>();
+            finishLoad(0);
             return;
         }
 
-        FileReader reader = null;
+        loadStartedAt = System.currentTimeMillis();
+        synchronized (loadLock) {
+            loaded = false;
+            skinMap = new ConcurrentHashMap<String, SkinData>();
+        }
+        Thread loader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Map<String, SkinData> fromFile = read();
+                synchronized (loadLock) {
+                    // Entries set or removed while loading are newer than the file
+                    for (Map.Entry<String, SkinData> entry : fromFile.entrySet()) {
+                        if (!removedWhileLoading.contains(entry.getKey())) {
+                            skinMap.putIfAbsent(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+                finishLoad(System.currentTimeMillis() - loadStartedAt);
+            }
+        }, "SkinStorage-Loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Read skins.json on the calling thread, replacing everything in memory.
+     */
+    public static void load() {
+        long start = System.currentTimeMillis();
+        Map<String, SkinData> fromFile = skinsFile != null && skinsFile.exists()
+            ? read() : new HashMap<String, SkinData>();
+        synchronized (loadLock) {
+            skinMap = new ConcurrentHashMap<String, SkinData>(fromFile);
+        }
+        finishLoad(System.currentTimeMillis() - start);
+    }
+
+    private static void finishLoad(long millis) {
+        synchronized (loadLock) {
+            loaded = true;
+            loadMillis = millis;
+            removedWhileLoading.clear();
+            missingWhileLoading.clear();
+            loadLock.notifyAll();
+        }
+        List<String> names = new ArrayList<String>();
+        for (SkinData data : skinMap.values()) {
+            if (data.skinType == SkinType.MOJANG_USERNAME && data.skinSource != null) {
+                names.add(data.skinSource);
+            }
+        }
+        sourceNames.replaceAll(names);
+        synchronized (wearers) {
+            wearers.clear();
+            for (Map.Entry<String, SkinData> entry : skinMap.entrySet()) {
+                indexWearer(entry.getKey(), entry.getValue().skinHash);
+            }
+        }
+        if (dirty) {
+            save(); // Changes made while loading were held back
+        }
+    }
+
+    /**
+     * Parse skins.json. Large files are split into runs of whole entries and parsed on several threads.
+     */
+    private static Map<String, SkinData> read() {
+        SkinEvents.StorageIo event = SkinEvents.beginStorage("load");
+        long bytes = skinsFile.length();
+        Map<String, SkinData> result = new HashMap<String, SkinData>();
+        boolean success = false;
         try {
-            reader = new FileReader(skinsFile);
-            Type type = new TypeToken<Map<String, SkinData>>() {}.getType();
-            Map<String, SkinData> loaded = GSON.fromJson(reader, type);
+            String json = new String(Files.readAllBytes(skinsFile.toPath()));
+            int threads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARSE_THREADS);
+            List<String> chunks = json.length() >= PARALLEL_PARSE_BYTES && threads > 1
+                ? splitEntries(json, threads * 4) : null;
 
-            if (loaded != null) {
-                skinMap = new ConcurrentHashMap<String, SkinData>(loaded);
-                PierceSkinRestorer.LOGGER.info("Loaded " + skinMap.size() + " skin entries");
+            if (chunks == null) {
+                Map<String, SkinData> parsed = GSON.fromJson(json, MAP_TYPE);
+                if (parsed != null) {
+                    result.putAll(parsed);
+                }
             } else {
-                skinMap = new ConcurrentHashMap<String, SkinData>();
+                result = parseParallel(chunks, threads);
             }
+            success = true;
+            PierceSkinRestorer.LOGGER.info("Loaded " + result.size() + " skin entries"
+                + (chunks != null ? " (" + chunks.size() + " chunks on " + threads + " threads)" : ""));
         } catch (Exception e) {
             PierceSkinRestorer.LOGGER.error("Failed to load skins.json", e);
-            skinMap = new ConcurrentHashMap<String, SkinData>();
+        }
+        event.end(bytes, result.size(), success);
+        return result;
+    }
+
+    private static Map<String, SkinData> parseParallel(List<String> chunks, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Map<String, SkinData>>> parts = new ArrayList<Future<Map<String, SkinData>>>();
+            for (final String chunk : chunks) {
+                parts.add(pool.submit(new Callable<Map<String, SkinData>>() {
+                    @Override
+                    public Map<String, SkinData> call() {
+                        return GSON.fromJson(chunk, MAP_TYPE);
+                    }
+                }));
+            }
+
+            Map<String, SkinData> result = new HashMap<String, SkinData>();
+            for (Future<Map<String, SkinData>> part : parts) {
+                Map<String, SkinData> parsed = part.get();
+                if (parsed != null) {
+                    result.putAll(parsed);
+                }
+            }
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Cut a top-level JSON object into about {@code pieces} smaller objects, each holding whole entries.
+     * Only strings and nesting are tracked, so this is much cheaper than parsing.
+     *
+     * @return the pieces, or null if the text is not a single JSON object
+     */
+    static List<String> splitEntries(String json, int pieces) {
+        int open = json.indexOf('{');
+        if (open < 0 || !json.substring(0, open).trim().isEmpty()) {
+            return null;
+        }
+
+        int target = Math.max(1, json.length() / pieces);
+        List<String> chunks = new ArrayList<String>();
+        int chunkStart = open + 1;
+        int depth = 0;
+        boolean inString = false;
+        for (int i = open; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    chunks.add("{" + json.substring(chunkStart, i) + "}");
+                    return json.substring(i + 1).trim().isEmpty() ? chunks : null;
+                }
+            } else if (c == ',' && depth == 1 && i - chunkStart >= target) {
+                chunks.add("{" + json.substring(chunkStart, i) + "}");
+                chunkStart = i + 1;
+            }
+        }
+        return null; // Unbalanced - let Gson report the error
+    }
+
+    /**
+     * Find one entry in skins.json without parsing the rest. Only used while the background load runs.
+     */
+    private static SkinData lookupWhileLoading(String playerUUID) {
+        if (missingWhileLoading.contains(playerUUID)) {
+            return null;
+        }
+
+        SkinData found = null;
+        JsonReader reader = null;
+        try {
+            reader = new JsonReader(new FileReader(skinsFile));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(playerUUID)) {
+                    found = GSON.fromJson(reader, SkinData.class);
+                    break;
+                }
+                reader.skipValue();
+            }
+            onDemandLookups.incrementAndGet();
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.warn("On-demand lookup of " + playerUUID + " in skins.json failed: " + e);
         } finally {
             if (reader != null) {
                 try {
@@ -65,17 +292,80 @@ public class SkinStorage {
                 }
             }
         }
+
+        synchronized (loadLock) {
+            if (loaded || removedWhileLoading.contains(playerUUID)) {
+                return skinMap.get(playerUUID);
+            }
+            if (found == null) {
+                missingWhileLoading.add(playerUUID);
+                return skinMap.get(playerUUID);
+            }
+            SkinData existing = skinMap.putIfAbsent(playerUUID, found);
+            return existing != null ? existing : found;
+        }
     }
 
-    public static void save() {
+    /**
+     * Block until skins.json has been read. Returns at once after startup.
+     */
+    public static void awaitLoaded() {
+        synchronized (loadLock) {
+            while (!loaded) {
+                try {
+                    loadLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * How long the last load took, or how long the running one has taken so far.
+     */
+    public static long getLoadMillis() {
+        return loaded ? loadMillis : System.currentTimeMillis() - loadStartedAt;
+    }
+
+    /**
+     * Entries read from skins.json one at a time because they were needed before loading finished.
+     */
+    public static int getOnDemandLookups() {
+        return onDemandLookups.get();
+    }
+
+    /**
+     * Write skins.json. While the background load runs, the save is held back until it finishes.
+     */
+    public static synchronized void save() {
         if (skinsFile == null) {
             return;
         }
+        if (!loaded) {
+            dirty = true;
+            return;
+        }
 
+        dirty = false;
+        long start = System.nanoTime();
+        SkinEvents.StorageIo event = SkinEvents.beginStorage("save");
+        boolean success = false;
+        // Written aside and renamed into place, so a shutdown mid-save never leaves a truncated file
+        File temp = new File(skinsFile.getPath() + ".tmp");
         FileWriter writer = null;
         try {
-            writer = new FileWriter(skinsFile);
+            writer = new FileWriter(temp);
             GSON.toJson(skinMap, writer);
+            writer.close();
+            writer = null;
+            Files.move(temp.toPath(), skinsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            success = true;
         } catch (Exception e) {
             PierceSkinRestorer.LOGGER.error("Failed to save skins.json", e);
         } finally {
@@ -86,50 +376,347 @@ public class SkinStorage {
                 }
             }
         }
+        long bytes = skinsFile.length();
+        SkinMetrics.recordStorageSave(start, bytes, skinMap.size());
+        event.end(bytes, skinMap.size(), success);
     }
 
     public static void setSkin(String playerUUID, String playerName, String skinSource, SkinType type) {
+        storeSkin(playerUUID, playerName, skinSource, type);
+        save();
+    }
+
+    /**
+     * Like setSkin, but saved lazily, with the next save or flush(), so it never blocks on file I/O.
+     * The caller arranges a flush() off the server thread.
+     */
+    public static void setSkinUnsaved(String playerUUID, String playerName, String skinSource, SkinType type) {
+        storeSkin(playerUUID, playerName, skinSource, type);
+        dirty = true;
+    }
+
+    private static void storeSkin(String playerUUID, String playerName, String skinSource, SkinType type) {
         SkinData data = new SkinData();
         data.playerName = playerName;
         data.skinSource = skinSource;
         data.skinType = type;
         data.lastUpdated = System.currentTimeMillis();
+        data.lastSeen = data.lastUpdated;
 
-        skinMap.put(playerUUID, data);
-        save();
+        unindexWearer(playerUUID, skinMap.put(playerUUID, data));
+        if (type == SkinType.MOJANG_USERNAME) {
+            sourceNames.add(skinSource);
+        }
 
         PierceSkinRestorer.LOGGER.info("Saved skin for " + playerName + " (" + playerUUID + "): " + skinSource);
     }
 
+    /**
+     * Store one entry of a bulk change in memory only. The caller indexes the skin sources
+     * and saves once after the last entry.
+     */
+    static void putSkin(String playerUUID, SkinData data) {
+        unindexWearer(playerUUID, skinMap.put(playerUUID, data));
+        indexWearer(playerUUID, data.skinHash);
+    }
+
+    /**
+     * Add the skin usernames of newly stored entries to the tab-completion index in one step.
+     */
+    static void indexSources(Collection<SkinData> skins) {
+        List<String> names = new ArrayList<String>();
+        for (SkinData data : skins) {
+            if (data.skinType == SkinType.MOJANG_USERNAME && data.skinSource != null) {
+                names.add(data.skinSource);
+            }
+        }
+        sourceNames.addAll(names);
+    }
+
     public static SkinData getSkin(String playerUUID) {
-        return skinMap.get(playerUUID);
+        SkinData data = skinMap.get(playerUUID);
+        if (data != null || loaded) {
+            return data;
+        }
+        return lookupWhileLoading(playerUUID);
     }
 
     public static void removeSkin(String playerUUID) {
-        skinMap.remove(playerUUID);
+        synchronized (loadLock) {
+            if (!loaded) {
+                removedWhileLoading.add(playerUUID);
+            }
+            unindexWearer(playerUUID, skinMap.remove(playerUUID));
+        }
         save();
     }
 
     public static boolean hasSkin(String playerUUID) {
-        return skinMap.containsKey(playerUUID);
+        return getSkin(playerUUID) != null;
     }
 
+    /**
+     * Read-only live view of the stored (not archived) entries.
+     * Waits for the startup load, so callers never see a partial map.
+     */
     public static Map<String, SkinData> getAllSkins() {
-        return new HashMap<String, SkinData>(skinMap);
+        awaitLoaded();
+        return Collections.unmodifiableMap(skinMap);
+    }
+
+    /**
+     * Record that a player was seen. Saved lazily, with the next save or flush().
+     */
+    public static void touch(String playerUUID) {
+        long now = System.currentTimeMillis();
+        SkinData data;
+        while ((data = skinMap.get(playerUUID)) != null) {
+            // Stored entries are never changed in place; save() may be writing this one right now
+            SkinData copy = data.copy();
+            copy.lastSeen = now;
+            if (skinMap.replace(playerUUID, data, copy)) {
+                dirty = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Save if anything changed since the last save.
+     */
+    public static void flush() {
+        if (dirty) {
+            save();
+        }
+    }
+
+    /**
+     * Cheap check for a player with no stored entry. False means there is nothing to restore.
+     */
+    public static boolean mayBeArchived(String playerUUID) {
+        return archive != null && archive.mayContain(playerUUID);
+    }
+
+    /**
+     * Move a player's entry back from the archive. Blocks on file I/O - not for the server thread.
+     *
+     * @return the restored entry, or null if the player was not archived
+     */
+    public static SkinData restoreFromArchive(String playerUUID) {
+        if (archive == null) {
+            return null;
+        }
+        SkinData data = archive.restore(playerUUID);
+        if (data == null) {
+            return null;
+        }
+
+        data.lastSeen = System.currentTimeMillis();
+        SkinData existing = skinMap.putIfAbsent(playerUUID, data);
+        if (existing != null) {
+            return existing; // Set again while we were reading the archive
+        }
+        if (data.skinType == SkinType.MOJANG_USERNAME && data.skinSource != null) {
+            sourceNames.add(data.skinSource);
+        }
+        indexWearer(playerUUID, data.skinHash);
+        save();
+        PierceSkinRestorer.LOGGER.info("Restored archived skin for " + data.playerName + " (" + playerUUID + ")");
+        return data;
+    }
+
+    /**
+     * Move entries not seen for retentionDays to the archive and rewrite skins.json.
+     * Blocks on file I/O - run it as a background job.
+     *
+     * @param keep Player UUIDs that must stay, e.g. those online
+     * @return the archived entries by player UUID (empty if retention is disabled)
+     */
+    public static Map<String, SkinData> compact(int retentionDays, Set<String> keep) {
+        Map<String, SkinData> dormant = new HashMap<String, SkinData>();
+        if (!loaded) {
+            return dormant; // Try again next interval
+        }
+        if (archive == null || retentionDays <= 0) {
+            flush();
+            return dormant;
+        }
+
+        long cutoff = System.currentTimeMillis() - retentionDays * 86400000L;
+        for (Map.Entry<String, SkinData> entry : skinMap.entrySet()) {
+            if (entry.getValue().getLastSeen() < cutoff && !keep.contains(entry.getKey())) {
+                dormant.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (dormant.isEmpty()) {
+            flush();
+            return dormant;
+        }
+
+        try {
+            archive.archive(dormant);
+        } catch (Exception e) {
+            PierceSkinRestorer.LOGGER.error("Failed to archive dormant skin entries", e);
+            flush();
+            return new HashMap<String, SkinData>();
+        }
+
+        // Keep anything changed or touched since we picked it, and drop its now stale archived copy
+        Iterator<Map.Entry<String, SkinData>> it = dormant.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, SkinData> entry = it.next();
+            if (entry.getValue().getLastSeen() >= cutoff || !skinMap.remove(entry.getKey(), entry.getValue())) {
+                archive.restore(entry.getKey());
+                it.remove();
+            } else {
+                unindexWearer(entry.getKey(), entry.getValue());
+            }
+        }
+        save();
+
+        PierceSkinRestorer.LOGGER.info("Archived " + dormant.size() + " skin entries not seen for " + retentionDays
+            + " days; " + skinMap.size() + " remain");
+        return dormant;
+    }
+
+    /**
+     * Record what a player's applied texture shows, and index them under its skin hash.
+     * Saved lazily, like touch().
+     */
+    public static void setTextureInfo(String playerUUID, TextureInfo info) {
+        if (info == null) {
+            return;
+        }
+        SkinData data;
+        while ((data = skinMap.get(playerUUID)) != null) {
+            if (info.getTimestamp() == data.textureTimestamp && info.getSkinHash() != null
+                && info.getSkinHash().equals(data.skinHash)) {
+                return; // Same texture as last time
+            }
+            SkinData copy = data.copy();
+            copy.skinHash = info.getSkinHash();
+            copy.slim = info.isSlim();
+            copy.cape = info.hasCape();
+            copy.textureTimestamp = info.getTimestamp();
+            synchronized (wearers) {
+                if (skinMap.replace(playerUUID, data, copy)) {
+                    unindexWearer(playerUUID, data);
+                    indexWearer(playerUUID, copy.skinHash);
+                    dirty = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * UUIDs of stored players whose last applied texture has this skin hash.
+     */
+    public static List<String> getWearers(String skinHash) {
+        synchronized (wearers) {
+            Set<String> players = wearers.get(skinHash.toLowerCase());
+            return players != null ? new ArrayList<String>(players) : new ArrayList<String>();
+        }
+    }
+
+    /**
+     * Number of distinct skins worn by stored players whose texture is known.
+     */
+    public static int getDistinctSkinCount() {
+        synchronized (wearers) {
+            return wearers.size();
+        }
+    }
+
+    private static void indexWearer(String playerUUID, String skinHash) {
+        if (skinHash == null) {
+            return;
+        }
+        synchronized (wearers) {
+            Set<String> players = wearers.get(skinHash);
+            if (players == null) {
+                players = new HashSet<String>();
+                wearers.put(skinHash, players);
+            }
+            players.add(playerUUID);
+        }
+    }
+
+    private static void unindexWearer(String playerUUID, SkinData data) {
+        if (data == null || data.skinHash == null) {
+            return;
+        }
+        synchronized (wearers) {
+            Set<String> players = wearers.get(data.skinHash);
+            if (players != null && players.remove(playerUUID) && players.isEmpty()) {
+                wearers.remove(data.skinHash);
+            }
+        }
+    }
+
+    /**
+     * Skin names used by stored players, for tab completion.
+     */
+    public static NameIndex getSourceNames() {
+        return sourceNames;
     }
 
     public static File getDataDir() {
         return dataDir;
     }
 
+    /**
+     * A stored skin preference. Entries in the store are never modified: changes replace
+     * them with a copy, so save() and compaction can read them without a lock.
+     */
     public static class SkinData {
         public String playerName;
-        public String skinSource;  // Username
+        public String skinSource;  // Username, or preset name for PRESET
         public SkinType skinType;
         public long lastUpdated;
+        public long lastSeen;      // Last login or logout; 0 in files written before it was tracked
+
+        // Decoded from the last texture applied; skinHash is null until one was
+        public String skinHash;
+        public boolean slim;
+        public boolean cape;
+        public long textureTimestamp;
+
+        public SkinData() {
+        }
+
+        public SkinData(String playerName, String skinSource, SkinType skinType) {
+            this.playerName = playerName;
+            this.skinSource = skinSource;
+            this.skinType = skinType;
+            this.lastUpdated = System.currentTimeMillis();
+            this.lastSeen = this.lastUpdated;
+        }
+
+        SkinData copy() {
+            SkinData copy = new SkinData();
+            copy.playerName = playerName;
+            copy.skinSource = skinSource;
+            copy.skinType = skinType;
+            copy.lastUpdated = lastUpdated;
+            copy.lastSeen = lastSeen;
+            copy.skinHash = skinHash;
+            copy.slim = slim;
+            copy.cape = cape;
+            copy.textureTimestamp = textureTimestamp;
+            return copy;
+        }
+
+        /**
+         * When the player was last seen, falling back to when the skin was set.
+         */
+        public long getLastSeen() {
+            return lastSeen > 0 ? lastSeen : lastUpdated;
+        }
     }
 
     public enum SkinType {
-        MOJANG_USERNAME
+        MOJANG_USERNAME,
+        PRESET           // Named skin from presets.json, applied without a Mojang request
     }
 }
@@ -0,0 +1,116 @@
+package com.pierce.skinrestorer.skin;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.nio.charset.Charset;
+import java.util.Base64;
+
+/**
+ * What a textures property actually shows, decoded once from its base64 JSON.
+ *
+ * Mojang stamps every profile response with a new timestamp, so two fetches of an unchanged
+ * skin have different texture values. The skin hash (the last path segment of the skin URL,
+ * which names the image on textures.minecraft.net) stays the same, so it is what change
+ * detection and the "who wears this skin" index compare.
+ */
+public final class TextureInfo {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String skinHash;  // Null if the property has no skin (default Steve/Alex)
+    private final boolean slim;     // Alex-style arms
+    private final String capeHash;  // Null if no cape
+    private final long timestamp;   // When Mojang produced the property, 0 if unknown
+
+    public TextureInfo(String skinHash, boolean slim, String capeHash, long timestamp) {
+        this.skinHash = skinHash;
+        this.slim = slim;
+        this.capeHash = capeHash;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Decode a textures property value.
+     *
+     * @return the metadata, or null if the value is not base64 encoded texture JSON
+     */
+    public static TextureInfo decode(String textureValue) {
+        try {
+            String json = new String(Base64.getMimeDecoder().decode(textureValue), UTF8);
+            JsonElement parsed = new JsonParser().parse(json);
+            if (!parsed.isJsonObject()) {
+                return null;
+            }
+            JsonObject root = parsed.getAsJsonObject();
+            long timestamp = root.has("timestamp") ? root.get("timestamp").getAsLong() : 0;
+
+            String skinHash = null;
+            boolean slim = false;
+            String capeHash = null;
+            JsonElement textures = root.get("textures");
+            if (textures != null && textures.isJsonObject()) {
+                JsonElement skin = textures.getAsJsonObject().get("SKIN");
+                if (skin != null && skin.isJsonObject()) {
+                    skinHash = hashOf(skin.getAsJsonObject());
+                    JsonElement metadata = skin.getAsJsonObject().get("metadata");
+                    if (metadata != null && metadata.isJsonObject()) {
+                        JsonElement model = metadata.getAsJsonObject().get("model");
+                        slim = model != null && "slim".equals(model.getAsString());
+                    }
+                }
+                JsonElement cape = textures.getAsJsonObject().get("CAPE");
+                if (cape != null && cape.isJsonObject()) {
+                    capeHash = hashOf(cape.getAsJsonObject());
+                }
+            }
+            return new TextureInfo(skinHash, slim, capeHash, timestamp);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String hashOf(JsonObject texture) {
+        JsonElement url = texture.get("url");
+        if (url == null) {
+            return null;
+        }
+        String value = url.getAsString();
+        return value.substring(value.lastIndexOf('/') + 1).toLowerCase();
+    }
+
+    public String getSkinHash() {
+        return skinHash;
+    }
+
+    public boolean isSlim() {
+        return slim;
+    }
+
+    public boolean hasCape() {
+        return capeHash != null;
+    }
+
+    public String getCapeHash() {
+        return capeHash;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Whether another property shows the same skin, model and cape, whatever its timestamp.
+     */
+    public boolean sameAppearance(TextureInfo other) {
+        return other != null && slim == other.slim
+            && (skinHash == null ? other.skinHash == null : skinHash.equals(other.skinHash))
+            && (capeHash == null ? other.capeHash == null : capeHash.equals(other.capeHash));
+    }
+
+    @Override
+    public String toString() {
+        return (skinHash != null ? skinHash : "default") + (slim ? " (slim)" : " (classic)") + (capeHash != null ? " with cape" : "");
+    }
+}
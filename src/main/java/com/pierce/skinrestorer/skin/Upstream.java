@@ -0,0 +1,100 @@
+package com.pierce.skinrestorer.skin;
+
+import com.pierce.skinrestorer.metrics.RollingLatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One server answering a Mojang endpoint (Mojang itself or a compatible mirror),
+ * with its recent latency and health.
+ *
+ * An upstream is taken out of rotation for a short while after several failures in a row,
+ * and is tried again once that time has passed.
+ */
+public class Upstream {
+
+    private static final int FAILURES_BEFORE_DOWN = 3;
+    private static final long DOWN_MILLIS = 30000;
+    private static final long LATENCY_WINDOW_MILLIS = 60000;
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final String baseUrl;
+    private final RollingLatencyHistogram latency = new RollingLatencyHistogram(LATENCY_WINDOW_MILLIS);
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile double averageMillis = -1; // Exponentially weighted; -1 until the first answer
+    private volatile long downUntil;
+
+    Upstream(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Record an answer (including "not found"), which also proves the upstream is up.
+     */
+    void recordSuccess(long nanos) {
+        latency.recordNanos(nanos);
+        double millis = nanos / 1000000.0;
+        double previous = averageMillis;
+        averageMillis = previous < 0 ? millis : previous + EWMA_WEIGHT * (millis - previous); // Racy, like maxNanos
+        successes.incrementAndGet();
+        consecutiveFailures.set(0);
+        downUntil = 0;
+    }
+
+    /**
+     * Record an error, timeout or rate limit.
+     */
+    void recordFailure() {
+        failures.incrementAndGet();
+        if (consecutiveFailures.incrementAndGet() >= FAILURES_BEFORE_DOWN) {
+            downUntil = System.currentTimeMillis() + DOWN_MILLIS;
+        }
+    }
+
+    void recordHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    public boolean isHealthy() {
+        return System.currentTimeMillis() >= downUntil;
+    }
+
+    /**
+     * Smoothed response time, or -1 if it has not answered yet.
+     */
+    public double getAverageMillis() {
+        return averageMillis;
+    }
+
+    public RollingLatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getSuccesses() {
+        return successes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Requests this upstream answered first after being sent as a hedge.
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl;
+    }
+}
@@ -0,0 +1,76 @@
+package com.pierce.skinrestorer.skin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The configured upstreams for one endpoint, in the order they should be tried.
+ */
+public class UpstreamGroup {
+
+    private final String name;
+    private volatile List<Upstream> upstreams;
+
+    UpstreamGroup(String name, String baseUrl) {
+        this.name = name;
+        this.upstreams = Collections.singletonList(new Upstream(baseUrl));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Replace the upstream list. Upstreams that stay keep their latency and health history.
+     */
+    synchronized void setBaseUrls(List<String> baseUrls) {
+        List<Upstream> updated = new ArrayList<Upstream>();
+        for (String url : baseUrls) {
+            Upstream upstream = null;
+            for (Upstream existing : upstreams) {
+                if (existing.getBaseUrl().equals(url)) {
+                    upstream = existing;
+                }
+            }
+            updated.add(upstream != null ? upstream : new Upstream(url));
+        }
+        if (!updated.isEmpty()) {
+            upstreams = Collections.unmodifiableList(updated);
+        }
+    }
+
+    /**
+     * The upstreams in configured order.
+     */
+    public List<Upstream> getUpstreams() {
+        return upstreams;
+    }
+
+    /**
+     * The upstreams in the order to try them now: healthy ones fastest first, then
+     * any that are down as a last resort. Upstreams that have not answered yet count
+     * as fastest so each gets measured; ties keep the configured order.
+     */
+    List<Upstream> ordered() {
+        List<Upstream> all = upstreams;
+        if (all.size() == 1) {
+            return all;
+        }
+
+        List<Upstream> healthy = new ArrayList<Upstream>(all.size());
+        List<Upstream> down = new ArrayList<Upstream>();
+        for (Upstream upstream : all) {
+            (upstream.isHealthy() ? healthy : down).add(upstream);
+        }
+        Collections.sort(healthy, new Comparator<Upstream>() {
+            @Override
+            public int compare(Upstream a, Upstream b) {
+                return Double.compare(Math.max(0, a.getAverageMillis()), Math.max(0, b.getAverageMillis()));
+            }
+        });
+        healthy.addAll(down);
+        return healthy;
+    }
+}